@@ -3,9 +3,6 @@ package com.syntex.islamicstudio;
 import java.io.File;
 import java.io.InputStream;
 import java.net.URL;
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -14,13 +11,11 @@ import java.util.jar.JarFile;
 
 import com.syntex.islamicstudio.cli.CliInterface;
 import com.syntex.islamicstudio.cli.CommandLoader;
-import com.syntex.islamicstudio.db.DatabaseManager;
 import com.syntex.islamicstudio.db.SchemaInitializer;
 import com.syntex.islamicstudio.db.importer.HadithImporter;
 import com.syntex.islamicstudio.db.importer.ImportManager;
 import com.syntex.islamicstudio.db.importer.QuranUthmaniImporter;
 import com.syntex.islamicstudio.db.importer.TranslationImporter;
-import com.syntex.islamicstudio.util.VerseImageGenerator;
 
 import picocli.CommandLine;
 
@@ -133,52 +128,4 @@ public class Main implements Runnable {
 
         return list;
     }
-
-    /**
-     * Example: Fetch a random ayah from DB and generate an image in output/
-     */
-    private void generateRandomAyahImage() {
-        try (Connection conn = DatabaseManager.getConnection(); Statement stmt = conn.createStatement()) {
-            ResultSet rs = stmt.executeQuery("SELECT id, surah_id, ayah_number FROM ayah ORDER BY RANDOM() LIMIT 1");
-            if (!rs.next()) return;
-
-            int ayahId = rs.getInt("id");
-            int surahId = rs.getInt("surah_id");
-            int ayahNum = rs.getInt("ayah_number");
-
-            var psSurah = conn.prepareStatement("SELECT name_ar FROM surah WHERE id=?");
-            psSurah.setInt(1, surahId);
-            var rsSurah = psSurah.executeQuery();
-            String surahName = rsSurah.next() ? rsSurah.getString("name_ar") : "?";
-
-            var psText = conn.prepareStatement("SELECT text FROM ayah_text WHERE ayah_id=? AND source_id=1");
-            psText.setInt(1, ayahId);
-            var rsText = psText.executeQuery();
-            String arabicText = rsText.next() ? rsText.getString("text") : "(no text)";
-
-            var psTrans = conn.prepareStatement("SELECT translation FROM ayah_translation WHERE ayah_id=? AND source_id=1");
-            psTrans.setInt(1, ayahId);
-            var rsTrans = psTrans.executeQuery();
-            String translation = rsTrans.next() ? rsTrans.getString("translation") : "(no translation)";
-
-            StringBuilder footnotes = new StringBuilder();
-            var psFoot = conn.prepareStatement("SELECT marker, content FROM translation_footnote WHERE ayah_translation_id IN (SELECT id FROM ayah_translation WHERE ayah_id=? AND source_id=1)");
-            psFoot.setInt(1, ayahId);
-            var rsFoot = psFoot.executeQuery();
-            while (rsFoot.next()) {
-                footnotes.append("[").append(rsFoot.getString("marker")).append("] ")
-                        .append(rsFoot.getString("content")).append(" ");
-            }
-
-            VerseImageGenerator.generateVerseImage(
-                    surahName, ayahNum,
-                    arabicText, translation, footnotes.toString(),
-                    "ayah_" + surahId + "_" + ayahNum + ".png"
-            );
-
-        } catch (Exception e) {
-            System.err.println("⚠ Failed to generate random ayah image: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-}
\ No newline at end of file
+}
@@ -6,20 +6,31 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.openai.client.OpenAIClient;
-import com.openai.client.okhttp.OpenAIOkHttpClient;
 import com.openai.models.chat.completions.ChatCompletion;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
 import com.syntex.islamicstudio.cli.Color;
 import com.syntex.islamicstudio.cli.CommandCategory;
 import com.syntex.islamicstudio.db.DatabaseManager;
 import com.syntex.islamicstudio.media.PixabayImageDownloader;
+import com.syntex.islamicstudio.util.CpuBudget;
 import com.syntex.islamicstudio.util.HadithImageGenerator;
+import com.syntex.islamicstudio.util.OpenAiClients;
+import com.syntex.islamicstudio.util.RenderPool;
+import com.syntex.islamicstudio.util.StageExecutor;
 
 import picocli.CommandLine;
 
@@ -30,7 +41,7 @@ import picocli.CommandLine;
 @CommandCategory("Hadith")
 public class HadithRandomImageCommand implements Runnable {
 
-    private final OpenAIClient openAi = OpenAIOkHttpClient.fromEnv();
+    private final OpenAIClient openAi = OpenAiClients.shared();
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
     @CommandLine.Option(
@@ -45,113 +56,216 @@ public class HadithRandomImageCommand implements Runnable {
     )
     private int count = 1;
 
+    @CommandLine.Option(
+            names = {"--llm-concurrency"},
+            description = "Background keyword requests to the LLM in flight at once (default: 8)"
+    )
+    private int llmConcurrency = 8;
+
+    @CommandLine.Option(
+            names = {"--download-concurrency"},
+            description = "Pixabay searches and downloads in flight at once (default: 6)"
+    )
+    private int downloadConcurrency = 6;
+
+    @CommandLine.Option(
+            names = {"--formats"},
+            split = ",",
+            description = "Card shape(s), comma-separated: ${COMPLETION-CANDIDATES} (default: FEED). "
+                    + "Extra shapes are written next to the feed card with a _story/_square suffix"
+    )
+    private List<HadithImageGenerator.CardFormat> formats;
+
+    /**
+     * Picks the hadiths with one query, then runs every card through a pipeline:
+     * keyword (LLM) -> background (Pixabay search + download) -> render + PNG write.
+     *
+     * The network stages run on {@link StageExecutor} threads, each capped by its own
+     * semaphore; rendering goes to the {@link RenderPool}, sized to the cores, with the
+     * requested shapes of one card sharing a photo decode and text layout. At most
+     * a few cards per stage slot are in flight, so memory stays flat for large
+     * {@code -n}, and a batch takes about as long as its slowest stage rather than the
+     * sum of all of them.
+     */
     @Override
     public void run() {
         if (count < 1) {
             count = 1;
         }
 
+        List<Map<String, String>> rows;
         try (Connection conn = DatabaseManager.getConnection()) {
-            String baseSql = """
-                SELECT h.narrator, h.english_text,
-                       h.local_num, h.grade,
-                       b.english_title AS book_en, b.arabic_title AS book_ar,
-                       c.name AS coll, c.arabic_name AS coll_ar
-                FROM hadith h
-                JOIN hadith_book b ON h.book_id = b.id
-                JOIN hadith_collection c ON b.collection_id = c.id
-                WHERE LOWER(COALESCE(h.grade,'')) LIKE '%sahih%'
-            """;
-
-            StringBuilder sql = new StringBuilder(baseSql);
-            List<Object> params = new ArrayList<>();
-
-            if (collectionFilter != null && !collectionFilter.isBlank()) {
-                sql.append(" AND c.name = ? ");
-                params.add(collectionFilter);
+            rows = pickHadiths(conn);
+            if (rows.isEmpty()) {
+                String scope = (collectionFilter == null || collectionFilter.isBlank())
+                        ? "from any collection"
+                        : "from collection '" + collectionFilter + "'";
+                System.out.println(Color.YELLOW.wrap("⚠️ No authentic (Sahih) hadith found " + scope + "."));
+
+                Map<String, Object> out = new LinkedHashMap<>();
+                out.put("available_collections", listAllCollections(conn));
+                System.out.println(gson.toJson(out));
+                return;
             }
+        } catch (Exception e) {
+            System.err.println("⚠️ Failed to generate hadith images: " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
 
-            sql.append(" ORDER BY RANDOM() LIMIT 1");
+        File workDir = new File("output/hadith_bg");
+        if (!workDir.exists() && !workDir.mkdirs()) {
+            System.err.println("⚠️ Could not create directory: " + workDir.getAbsolutePath());
+        }
 
-            for (int i = 0; i < count; i++) {
-                try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
-                    for (int p = 0; p < params.size(); p++) {
-                        ps.setObject(p + 1, params.get(p));
+        Semaphore llm = new Semaphore(Math.max(1, llmConcurrency));
+        Semaphore downloads = new Semaphore(Math.max(1, downloadConcurrency));
+        Semaphore inFlight = new Semaphore(Math.max(1, llmConcurrency) + Math.max(1, downloadConcurrency)
+                + RenderPool.shared().window());
+        AtomicLong keywordMillis = new AtomicLong();
+        AtomicLong downloadMillis = new AtomicLong();
+        AtomicLong renderMillis = new AtomicLong();
+        AtomicInteger saved = new AtomicInteger();
+
+        List<HadithImageGenerator.CardFormat> shapes = formats == null || formats.isEmpty()
+                ? List.of(HadithImageGenerator.CardFormat.FEED) : List.copyOf(new LinkedHashSet<>(formats));
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Void>> cards = new ArrayList<>();
+        // Keeps the render share of the cores for the whole batch, not just while a card renders
+        CpuBudget.Lease lease = CpuBudget.render();
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                Map<String, String> row = rows.get(i);
+                String hadithReference = outputName(row, i);
+
+                Map<String, Object> hadithJson = new LinkedHashMap<>(row);
+                hadithJson.put("image_file", "output/" + hadithReference);
+                System.out.println(gson.toJson(hadithJson));
+
+                inFlight.acquire();
+                CompletableFuture<String> keyword = StageExecutor.async(() -> timed(llm, keywordMillis,
+                        () -> sanitizeKeyword(suggestBackgroundForHadith(row.get("english_text")))));
+                CompletableFuture<File> background = StageExecutor.then(keyword, kw -> timed(downloads, downloadMillis,
+                        () -> downloadBackground(kw, workDir)));
+                CompletableFuture<Void> card = StageExecutor.then(background, bg -> {
+                    if (bg == null) return null;
+                    long t = System.currentTimeMillis();
+                    // Rendering uses the pool's threads, one task per shape; this stage thread only waits
+                    HadithImageGenerator.generateHadithImages(
+                            bg,
+                            row.get("collection") + " (" + safeStr(row.get("collection_ar")) + ")",
+                            safeStr(row.get("book_en")), safeStr(row.get("book_ar")),
+                            safeStr(row.get("number")), safeStr(row.get("grade")), safeStr(row.get("narrator")),
+                            safeStr(row.get("english_text")),
+                            hadithReference, shapes
+                    );
+                    renderMillis.addAndGet(System.currentTimeMillis() - t);
+                    saved.incrementAndGet();
+                    return null;
+                });
+                cards.add(card.whenComplete((ok, error) -> {
+                    inFlight.release();
+                    if (error != null) {
+                        Throwable cause = error;
+                        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                                && cause.getCause() != null) cause = cause.getCause();
+                        System.err.println("⚠️ Failed to generate " + hadithReference + ": " + cause.getMessage());
                     }
+                }));
+            }
+            CompletableFuture.allOf(cards.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("⚠️ Interrupted; " + saved.get() + " image(s) saved");
+            return;
+        } finally {
+            lease.close();
+        }
 
-                    try (ResultSet rs = ps.executeQuery()) {
-                        if (!rs.next()) {
-                            String scope = (collectionFilter == null || collectionFilter.isBlank())
-                                    ? "from any collection"
-                                    : "from collection '" + collectionFilter + "'";
-                            System.out.println(Color.YELLOW.wrap("⚠️ No authentic (Sahih) hadith found " + scope + "."));
-
-                            List<Map<String, Object>> collections = listAllCollections(conn);
-                            Map<String, Object> out = new LinkedHashMap<>();
-                            out.put("available_collections", collections);
-                            System.out.println(gson.toJson(out));
-                            continue;
-                        }
-
-                        String collection = rs.getString("coll");
-                        String collectionAr = rs.getString("coll_ar");
-                        String bookEn = rs.getString("book_en");
-                        String bookAr = rs.getString("book_ar");
-                        String num = rs.getString("local_num");
-                        String grade = rs.getString("grade");
-                        String narrator = rs.getString("narrator");
-                        String english = rs.getString("english_text");
-
-                        // Unique filename per iteration
-                        String baseId = (num != null && !num.isBlank()) ? num : String.valueOf(System.currentTimeMillis());
-                        String hadithReference = safeStr(bookEn) + "#" + safeStr(baseId) + "_" + i + ".png";
-
-                        Map<String, Object> hadithJson = new LinkedHashMap<>();
-                        hadithJson.put("collection", collection);
-                        hadithJson.put("collection_ar", collectionAr);
-                        hadithJson.put("book_en", bookEn);
-                        hadithJson.put("book_ar", bookAr);
-                        hadithJson.put("number", num);
-                        hadithJson.put("grade", grade);
-                        hadithJson.put("narrator", narrator);
-                        hadithJson.put("english_text", english);
-                        hadithJson.put("image_file", "output/" + hadithReference);
-                        System.out.println(gson.toJson(hadithJson));
-
-                        String raw = suggestBackgroundForHadith(english);
-                        String keyword = sanitizeKeyword(raw);
-
-                        File workDir = new File("output/hadith_bg");
-                        if (!workDir.exists() && !workDir.mkdirs()) {
-                            System.err.println("⚠️ Could not create directory: " + workDir.getAbsolutePath());
-                        }
-
-                        List<File> bg = PixabayImageDownloader.downloadImages(keyword, workDir, 1);
-                        if (bg == null || bg.isEmpty() || bg.get(0) == null || !bg.get(0).exists()) {
-                            String fallback = "calligraphy";
-                            bg = PixabayImageDownloader.downloadImages(fallback, workDir, 1);
-                            if (bg == null || bg.isEmpty()) {
-                                System.err.println("⚠️ Failed to download background image for keywords: " + keyword + " and fallback.");
-                                continue;
-                            }
-                        }
-
-                        // Generate using the canonical method (now English-only by design)
-                        HadithImageGenerator.generateHadithImage(
-                                bg.get(0),
-                                collection + " (" + safeStr(collectionAr) + ")",
-                                safeStr(bookEn), safeStr(bookAr),
-                                safeStr(num), safeStr(grade), safeStr(narrator),
-                                safeStr(english),
-                                hadithReference
-                        );
-                    }
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+        System.out.printf("📊 %d/%d images in %.1fs (%.2f images/s); stage time: keyword %.1fs, background %.1fs, render %.1fs%n",
+                saved.get(), rows.size(), seconds, saved.get() / Math.max(seconds, 0.001),
+                keywordMillis.get() / 1000.0, downloadMillis.get() / 1000.0, renderMillis.get() / 1000.0);
+    }
+
+    /** {@code count} distinct random Sahih hadiths in one query. */
+    private List<Map<String, String>> pickHadiths(Connection conn) throws Exception {
+        String baseSql = """
+            SELECT h.narrator, h.english_text,
+                   h.local_num, h.grade,
+                   b.english_title AS book_en, b.arabic_title AS book_ar,
+                   c.name AS coll, c.arabic_name AS coll_ar
+            FROM hadith h
+            JOIN hadith_book b ON h.book_id = b.id
+            JOIN hadith_collection c ON b.collection_id = c.id
+            WHERE LOWER(COALESCE(h.grade,'')) LIKE '%sahih%'
+        """;
+
+        StringBuilder sql = new StringBuilder(baseSql);
+        List<Object> params = new ArrayList<>();
+
+        if (collectionFilter != null && !collectionFilter.isBlank()) {
+            sql.append(" AND c.name = ? ");
+            params.add(collectionFilter);
+        }
+
+        sql.append(" ORDER BY RANDOM() LIMIT ?");
+        params.add(count);
+
+        List<Map<String, String>> rows = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int p = 0; p < params.size(); p++) {
+                ps.setObject(p + 1, params.get(p));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, String> row = new LinkedHashMap<>();
+                    row.put("collection", rs.getString("coll"));
+                    row.put("collection_ar", rs.getString("coll_ar"));
+                    row.put("book_en", rs.getString("book_en"));
+                    row.put("book_ar", rs.getString("book_ar"));
+                    row.put("number", rs.getString("local_num"));
+                    row.put("grade", rs.getString("grade"));
+                    row.put("narrator", rs.getString("narrator"));
+                    row.put("english_text", rs.getString("english_text"));
+                    rows.add(row);
                 }
             }
+        }
+        return rows;
+    }
 
-        } catch (Exception e) {
-            System.err.println("⚠️ Failed to generate hadith images: " + e.getMessage());
-            e.printStackTrace();
+    /** Unique filename per item */
+    private String outputName(Map<String, String> row, int i) {
+        String num = row.get("number");
+        String baseId = (num != null && !num.isBlank()) ? num : String.valueOf(System.currentTimeMillis());
+        return safeStr(row.get("book_en")) + "#" + safeStr(baseId) + "_" + i + ".png";
+    }
+
+    /** A background for the keyword, falling back to calligraphy; null if neither search yields one. */
+    private File downloadBackground(String keyword, File workDir) throws Exception {
+        List<File> bg = PixabayImageDownloader.downloadImages(keyword, workDir, 1);
+        if (bg == null || bg.isEmpty() || bg.get(0) == null || !bg.get(0).exists()) {
+            String fallback = "calligraphy";
+            bg = PixabayImageDownloader.downloadImages(fallback, workDir, 1);
+            if (bg == null || bg.isEmpty()) {
+                System.err.println("⚠️ Failed to download background image for keywords: " + keyword + " and fallback.");
+                return null;
+            }
+        }
+        return bg.get(0);
+    }
+
+    /** Runs {@code task} holding a permit of {@code limit}, adding its duration to {@code millis}. */
+    private static <T> T timed(Semaphore limit, AtomicLong millis, Callable<T> task) throws Exception {
+        limit.acquire();
+        long t = System.currentTimeMillis();
+        try {
+            return task.call();
+        } finally {
+            millis.addAndGet(System.currentTimeMillis() - t);
+            limit.release();
         }
     }
 
@@ -0,0 +1,269 @@
+package com.syntex.islamicstudio.commands;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.syntex.islamicstudio.cli.CommandCategory;
+import com.syntex.islamicstudio.media.FfmpegRunner;
+import com.syntex.islamicstudio.media.MediaProbe;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.CardBackend;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.RetentionPolicy;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.VideoProfile;
+import com.syntex.islamicstudio.util.FileHashes;
+import com.syntex.islamicstudio.util.TextLayoutCache;
+
+import picocli.CommandLine;
+
+@CommandLine.Command(
+        name = "quran-video-batch",
+        description = "Generate Qur'anic recitation videos for a directory or manifest of recitations in one JVM"
+)
+@CommandCategory("Media")
+public class QuranVideoBatchCommand implements Runnable {
+
+    private static final List<String> AUDIO_EXTENSIONS = List.of(".mp3", ".wav", ".m4a", ".ogg", ".flac");
+
+    @CommandLine.Parameters(
+            index = "0",
+            paramLabel = "INPUT",
+            description = "Directory of recitation audio files, or a manifest file with one audio path per line "
+                    + "(optionally followed by ' -> <output video>'; '#' starts a comment)"
+    )
+    private File input;
+
+    @CommandLine.Option(
+            names = {"-o", "--output-dir"},
+            description = "Directory for videos without an explicit output (default: output/batch)"
+    )
+    private File outputDir = new File("output/batch");
+
+    @CommandLine.Option(
+            names = {"-j", "--jobs"},
+            description = "Recitations rendered concurrently (default: 2)"
+    )
+    private int jobs = 2;
+
+    @CommandLine.Option(
+            names = {"--profile"},
+            split = ",",
+            description = "Video profile(s), comma-separated: ${COMPLETION-CANDIDATES} (default: DESKTOP)"
+    )
+    private List<VideoProfile> profiles;
+
+    @CommandLine.Option(
+            names = {"--no-bg-audio"},
+            description = "Disable background video audio (keep recitation only)"
+    )
+    private boolean noBgAudio = false;
+
+    @CommandLine.Option(
+            names = {"--max-verses"},
+            description = "Maximum number of verses per video (default: unlimited)"
+    )
+    private int maxVerses = 0;
+
+    @CommandLine.Option(
+            names = {"--bg-volume"},
+            description = "Background video audio volume (0.0 - 1.0, default: 0.2)"
+    )
+    private double bgVolume = 0.2;
+
+    @CommandLine.Option(
+            names = {"--backend"},
+            description = "Card renderer: ${COMPLETION-CANDIDATES} (default: SPRITES). "
+                    + "ASS burns the text in with libass during the encode, with no Java image rendering"
+    )
+    private CardBackend backend = CardBackend.SPRITES;
+
+    @CommandLine.Option(
+            names = {"--karaoke"},
+            description = "Highlight each Arabic word as it is recited"
+    )
+    private boolean karaoke = false;
+
+    @CommandLine.Option(
+            names = {"--retain"},
+            description = "What to keep in each work dir after success: ${COMPLETION-CANDIDATES} (default: CHECKPOINTS)"
+    )
+    private RetentionPolicy retention = RetentionPolicy.CHECKPOINTS;
+
+    @CommandLine.Option(
+            names = {"--debug"},
+            description = "Enable debug mode (overlay raw transcript)"
+    )
+    private boolean debug = false;
+
+    /** One recitation to render and what happened to it. */
+    private static class Job {
+        final File audio;
+        final File output;
+        List<File> videos = List.of();
+        double audioSeconds;
+        long millis;
+        Exception error;
+
+        Job(File audio, File output) {
+            this.audio = audio;
+            this.output = output;
+        }
+    }
+
+    @Override
+    public void run() {
+        List<Job> batch;
+        try {
+            batch = readJobs();
+        } catch (Exception e) {
+            System.err.println("❌ Cannot read batch input: " + e.getMessage());
+            return;
+        }
+        if (batch.isEmpty()) {
+            System.out.println("⚠ No recitations found in " + input);
+            return;
+        }
+
+        int workers = Math.max(1, Math.min(jobs, batch.size()));
+        System.out.println("🎬 Rendering " + batch.size() + " recitations, " + workers + " at a time");
+
+        FfmpegRunner.ProgressListener progress = FfmpegRunner.console();
+        FfmpegRunner.addListener(progress);
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "batch-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        long start = System.currentTimeMillis();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Job job : batch) futures.add(pool.submit(() -> render(job)));
+            for (Future<?> f : futures) f.get();
+        } catch (Exception e) {
+            System.err.println("❌ Batch interrupted: " + e.getMessage());
+        } finally {
+            pool.shutdownNow();
+            FfmpegRunner.removeListener(progress);
+        }
+
+        printSummary(batch, System.currentTimeMillis() - start);
+    }
+
+    private void render(Job job) {
+        long start = System.currentTimeMillis();
+        try {
+            job.audioSeconds = MediaProbe.duration(job.audio);
+            // The maker is cheap; the corpus, DB pool, OpenAI client and caches behind it are shared
+            QuranRecitationVideoMaker maker = new QuranRecitationVideoMaker(debug);
+            maker.setRetention(retention);
+            maker.setBackend(backend);
+            maker.setKaraoke(karaoke);
+            maker.setProfiles(profiles == null || profiles.isEmpty() ? List.of(VideoProfile.DESKTOP) : profiles);
+            job.videos = maker.generateVideo(job.audio, job.output, noBgAudio, maxVerses, bgVolume);
+            System.out.println("✅ " + job.audio.getName() + " done");
+        } catch (Exception e) {
+            job.error = e;
+            System.err.println("❌ " + job.audio.getName() + " failed: " + e.getMessage());
+        } finally {
+            job.millis = System.currentTimeMillis() - start;
+        }
+    }
+
+    private List<Job> readJobs() throws Exception {
+        List<Job> batch = new ArrayList<>();
+        for (File[] e : readRecitations(input, outputDir)) batch.add(new Job(e[0], e[1]));
+        return batch;
+    }
+
+    /**
+     * Reads a directory or manifest into {audio, output} pairs. Recitations without
+     * an explicit output go to {@code outputDir}; ones that share a file name get
+     * the path hash in their output name.
+     */
+    static List<File[]> readRecitations(File input, File outputDir) throws Exception {
+        List<File[]> entries = new ArrayList<>();
+        if (input.isDirectory()) {
+            File[] files = input.listFiles(f -> f.isFile() && isAudio(f));
+            if (files != null) {
+                Arrays.sort(files);
+                for (File f : files) entries.add(new File[] {f, null});
+            }
+        } else {
+            File base = input.getAbsoluteFile().getParentFile();
+            for (String raw : Files.readAllLines(input.toPath())) {
+                String line = raw.strip();
+                int hash = line.indexOf('#');
+                if (hash >= 0) line = line.substring(0, hash).strip();
+                if (line.isEmpty()) continue;
+
+                String[] parts = line.split("\\s*->\\s*", 2);
+                File audio = resolve(base, parts[0]);
+                File output = parts.length > 1 ? resolve(base, parts[1]) : null;
+                entries.add(new File[] {audio, output});
+            }
+        }
+
+        Map<String, Integer> nameCounts = new HashMap<>();
+        for (File[] e : entries) nameCounts.merge(stem(e[0]), 1, Integer::sum);
+
+        for (File[] e : entries) {
+            if (e[1] != null) continue;
+            String stem = stem(e[0]);
+            if (nameCounts.get(stem) > 1) {
+                stem += "-" + FileHashes.sha256(e[0].getAbsolutePath()).substring(0, 8);
+            }
+            e[1] = new File(outputDir, stem + ".mp4");
+        }
+        return entries;
+    }
+
+    private static File resolve(File base, String path) {
+        File f = new File(path);
+        return f.isAbsolute() ? f : new File(base, path);
+    }
+
+    static boolean isAudio(File f) {
+        String name = f.getName().toLowerCase(Locale.ROOT);
+        return AUDIO_EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    static String stem(File f) {
+        String name = f.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static void printSummary(List<Job> batch, long wallMillis) {
+        int ok = 0;
+        double audioSeconds = 0;
+        System.out.println();
+        System.out.printf("%-32s %-6s %10s %10s%n", "recitation", "status", "audio s", "wall s");
+        for (Job job : batch) {
+            boolean success = job.error == null;
+            if (success) {
+                ok++;
+                audioSeconds += job.audioSeconds;
+            }
+            System.out.printf("%-32s %-6s %10.1f %10.1f%n", job.audio.getName(), success ? "ok" : "FAILED",
+                    job.audioSeconds, job.millis / 1000.0);
+        }
+
+        double wall = wallMillis / 1000.0;
+        System.out.println();
+        System.out.printf("📊 %d/%d videos in %.1fs | %.1f videos/hour | %.2fx realtime (audio s per wall s)%n",
+                ok, batch.size(), wall, wall == 0 ? 0 : ok * 3600 / wall, wall == 0 ? 0 : audioSeconds / wall);
+        System.out.println("📊 " + FfmpegRunner.stats());
+        System.out.println("📊 " + TextLayoutCache.stats());
+    }
+}
@@ -1,9 +1,15 @@
 package com.syntex.islamicstudio.commands;
 
 import java.io.File;
+import java.util.List;
 
 import com.syntex.islamicstudio.cli.CommandCategory;
+import com.syntex.islamicstudio.media.FfmpegRunner;
 import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.PreviewBackground;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.PreviewOptions;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.CardBackend;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.RetentionPolicy;
 import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.VideoProfile;
 
 import picocli.CommandLine;
@@ -36,9 +42,11 @@ public class QuranVideoCommand implements Runnable {
 
     @CommandLine.Option(
             names = {"--profile"},
-            description = "Video profile: ${COMPLETION-CANDIDATES} (default: DESKTOP)"
+            split = ",",
+            description = "Video profile(s), comma-separated: ${COMPLETION-CANDIDATES} (default: DESKTOP). "
+                    + "Several profiles share transcription, alignment and audio, and are encoded in one ffmpeg run."
     )
-    private VideoProfile profile = VideoProfile.DESKTOP;
+    private List<VideoProfile> profiles;
 
     @CommandLine.Option(
             names = {"--no-bg-audio"},
@@ -58,17 +66,131 @@ public class QuranVideoCommand implements Runnable {
     )
     private double bgVolume = 0.2;
 
+    @CommandLine.Option(
+            names = {"--backend"},
+            description = "Card renderer: ${COMPLETION-CANDIDATES} (default: SPRITES). "
+                    + "ASS burns the text in with libass during the encode, with no Java image rendering"
+    )
+    private CardBackend backend = CardBackend.SPRITES;
+
+    @CommandLine.Option(
+            names = {"--karaoke"},
+            description = "Highlight each Arabic word as it is recited"
+    )
+    private boolean karaoke = false;
+
+    @CommandLine.Option(
+            names = {"--retain"},
+            description = "What to keep in the work dir after success: ${COMPLETION-CANDIDATES} (default: CHECKPOINTS). "
+                    + "Failed runs always keep everything so a rerun resumes from the last completed stage."
+    )
+    private RetentionPolicy retention = RetentionPolicy.CHECKPOINTS;
+
+    @CommandLine.Option(
+            names = {"--hls"},
+            description = "Write HLS (fragmented MP4 segments cut at ayah starts) to <output>_hls/playlist.m3u8; "
+                    + "the playlist grows as segments finish, and a rerun only encodes missing segments"
+    )
+    private boolean hls = false;
+
+    @CommandLine.Option(
+            names = {"--hls-segment-seconds"},
+            description = "Approximate HLS segment length; segments only end where an ayah starts (default: 30)"
+    )
+    private double hlsSegmentSeconds = 30;
+
+    @CommandLine.Option(
+            names = {"--preview"},
+            description = "Fast draft render (reduced resolution, ultrafast encode, static background) "
+                    + "written as <output>_preview.mp4, on the same timeline as the final video"
+    )
+    private boolean preview = false;
+
+    @CommandLine.Option(
+            names = {"--preview-scale"},
+            description = "Preview frame scale relative to the profile size (default: 0.5)"
+    )
+    private double previewScale = 0.5;
+
+    @CommandLine.Option(
+            names = {"--preview-bg"},
+            description = "Preview background: ${COMPLETION-CANDIDATES} (default: SOLID)"
+    )
+    private PreviewBackground previewBackground = PreviewBackground.SOLID;
+
+    @CommandLine.Option(
+            names = {"--preview-ayahs"},
+            paramLabel = "FROM-TO",
+            description = "Only preview these ayat, e.g. 3-7 (implies --preview)"
+    )
+    private String previewAyahs;
+
+    @CommandLine.Option(
+            names = {"--preview-time"},
+            paramLabel = "FROM-TO",
+            description = "Only preview this slice of the video in seconds, e.g. 12.5-40 (implies --preview)"
+    )
+    private String previewTime;
+
     @Override
     public void run() {
+        FfmpegRunner.ProgressListener progress = FfmpegRunner.console();
+        FfmpegRunner.addListener(progress);
         try {
             System.out.println("🎬 Generating Qur'anic video...");
             QuranRecitationVideoMaker maker = new QuranRecitationVideoMaker(debug);
-            maker.setProfile(profile);
-            maker.generateVideo(audioFile, outputFile, noBgAudio, maxVerses, bgVolume);
-            System.out.println("✅ Video generated successfully: " + outputFile.getAbsolutePath());
+            maker.setRetention(retention);
+            maker.setBackend(backend);
+            maker.setKaraoke(karaoke);
+            maker.setProfiles(profiles == null || profiles.isEmpty() ? List.of(VideoProfile.DESKTOP) : profiles);
+            if (preview || previewAyahs != null || previewTime != null) maker.setPreview(previewOptions());
+            if (hls) {
+                for (File playlist : maker.generateHls(audioFile, outputFile, noBgAudio, maxVerses, bgVolume, hlsSegmentSeconds)) {
+                    System.out.println("✅ HLS playlist generated successfully: " + playlist.getAbsolutePath());
+                }
+            } else {
+                for (File video : maker.generateVideo(audioFile, outputFile, noBgAudio, maxVerses, bgVolume)) {
+                    System.out.println("✅ Video generated successfully: " + video.getAbsolutePath());
+                }
+            }
         } catch (Exception e) {
             System.err.println("❌ Failed to generate Qur'anic video: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            FfmpegRunner.removeListener(progress);
+            System.out.println("📊 " + FfmpegRunner.stats());
+        }
+    }
+
+    private PreviewOptions previewOptions() {
+        if (previewAyahs != null && previewTime != null) {
+            throw new IllegalArgumentException("Use either --preview-ayahs or --preview-time, not both");
+        }
+        if (previewAyahs != null) {
+            double[] r = parseRange(previewAyahs);
+            return new PreviewOptions(previewScale, previewBackground, (int) r[0], (int) r[1], -1, -1);
+        }
+        if (previewTime != null) {
+            double[] r = parseRange(previewTime);
+            return new PreviewOptions(previewScale, previewBackground, -1, -1, r[0], r[1]);
+        }
+        return PreviewOptions.whole(previewScale, previewBackground);
+    }
+
+    /** "a-b", "a-" or "-b" (open ends become -1); a single value "a" means a-a. */
+    private static double[] parseRange(String range) {
+        String s = range.trim();
+        int dash = s.indexOf('-', 1);
+        if (s.startsWith("-")) dash = 0;
+        if (dash < 0) {
+            double v = Double.parseDouble(s);
+            return new double[] {v, v};
         }
+        String from = s.substring(0, dash).trim();
+        String to = s.substring(dash + 1).trim();
+        return new double[] {
+                from.isEmpty() ? -1 : Double.parseDouble(from),
+                to.isEmpty() ? -1 : Double.parseDouble(to)
+        };
     }
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package com.syntex.islamicstudio.commands;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.syntex.islamicstudio.Main;
+import com.syntex.islamicstudio.cli.CommandCategory;
+import com.syntex.islamicstudio.media.FfmpegRunner;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.CardBackend;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.RetentionPolicy;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.VideoProfile;
+import com.syntex.islamicstudio.media.quran.ShardCoordinator;
+import com.syntex.islamicstudio.media.quran.ShardQueue;
+
+import picocli.CommandLine;
+
+@CommandLine.Command(
+        name = "quran-video-coordinator",
+        description = "Split recitation videos into tasks and render them across worker processes sharing a queue directory"
+)
+@CommandCategory("Media")
+public class QuranVideoCoordinatorCommand implements Runnable {
+
+    @CommandLine.Parameters(
+            index = "0",
+            paramLabel = "INPUT",
+            description = "Recitation audio file, directory of recitations, or batch manifest (see quran-video-batch)"
+    )
+    private File input;
+
+    @CommandLine.Option(
+            names = {"--queue"},
+            description = "Queue directory shared with the workers (default: output/queue)"
+    )
+    private File queueDir = new File("output/queue");
+
+    @CommandLine.Option(
+            names = {"-w", "--workers"},
+            description = "Worker processes to start on this machine; 0 to rely on workers started elsewhere (default: 2)"
+    )
+    private int workers = 2;
+
+    @CommandLine.Option(
+            names = {"--segment-seconds"},
+            description = "Split recitations longer than 1.5x this into segments of about this length, cut at ayah starts (default: 300)"
+    )
+    private double segmentSeconds = 300;
+
+    @CommandLine.Option(
+            names = {"--retries"},
+            description = "Attempts per task before giving up on it (default: 2)"
+    )
+    private int retries = 2;
+
+    @CommandLine.Option(
+            names = {"-o", "--output-dir"},
+            description = "Directory for videos without an explicit output (default: output/batch)"
+    )
+    private File outputDir = new File("output/batch");
+
+    @CommandLine.Option(
+            names = {"--profile"},
+            split = ",",
+            description = "Video profile(s), comma-separated: ${COMPLETION-CANDIDATES} (default: DESKTOP)"
+    )
+    private List<VideoProfile> profiles;
+
+    @CommandLine.Option(
+            names = {"--no-bg-audio"},
+            description = "Disable background video audio (keep recitation only)"
+    )
+    private boolean noBgAudio = false;
+
+    @CommandLine.Option(
+            names = {"--max-verses"},
+            description = "Maximum number of verses per video (default: unlimited)"
+    )
+    private int maxVerses = 0;
+
+    @CommandLine.Option(
+            names = {"--bg-volume"},
+            description = "Background video audio volume (0.0 - 1.0, default: 0.2)"
+    )
+    private double bgVolume = 0.2;
+
+    @CommandLine.Option(
+            names = {"--backend"},
+            description = "Card renderer: ${COMPLETION-CANDIDATES} (default: SPRITES). "
+                    + "ASS burns the text in with libass during the encode, with no Java image rendering"
+    )
+    private CardBackend backend = CardBackend.SPRITES;
+
+    @CommandLine.Option(
+            names = {"--karaoke"},
+            description = "Highlight each Arabic word as it is recited"
+    )
+    private boolean karaoke = false;
+
+    @CommandLine.Option(
+            names = {"--retain"},
+            description = "What to keep in each work dir after success: ${COMPLETION-CANDIDATES} (default: CHECKPOINTS)"
+    )
+    private RetentionPolicy retention = RetentionPolicy.CHECKPOINTS;
+
+    @CommandLine.Option(
+            names = {"--debug"},
+            description = "Enable debug mode (overlay raw transcript)"
+    )
+    private boolean debug = false;
+
+    @Override
+    public void run() {
+        List<File[]> recitations;
+        try {
+            recitations = input.isFile() && QuranVideoBatchCommand.isAudio(input)
+                    ? List.<File[]>of(new File[] {input, new File(outputDir, QuranVideoBatchCommand.stem(input) + ".mp4")})
+                    : QuranVideoBatchCommand.readRecitations(input, outputDir);
+        } catch (Exception e) {
+            System.err.println("❌ Cannot read input: " + e.getMessage());
+            return;
+        }
+        if (recitations.isEmpty()) {
+            System.out.println("⚠ No recitations found in " + input);
+            return;
+        }
+
+        ShardQueue queue = new ShardQueue(queueDir);
+        ShardCoordinator coordinator = new ShardCoordinator(queue);
+        coordinator.setProfiles(profiles == null || profiles.isEmpty() ? List.of(VideoProfile.DESKTOP) : profiles);
+        coordinator.setRetention(retention);
+        coordinator.setBackend(backend);
+        coordinator.setKaraoke(karaoke);
+        coordinator.setAudio(noBgAudio, bgVolume);
+        coordinator.setMaxVerses(maxVerses);
+        coordinator.setDebug(debug);
+        coordinator.setSegmentSeconds(segmentSeconds);
+        coordinator.setMaxAttempts(retries);
+
+        FfmpegRunner.ProgressListener progress = FfmpegRunner.console();
+        FfmpegRunner.addListener(progress);
+        List<Process> started = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        try {
+            queue.reset();
+            for (int i = 1; i <= workers; i++) started.add(startWorker(queue, "w" + i));
+            System.out.println("🎬 " + recitations.size() + " recitation(s), " + started.size()
+                    + " local worker(s), queue " + queueDir);
+
+            Map<File, List<File>> results = coordinator.run(recitations, started);
+            queue.stop();
+
+            System.out.println();
+            int ok = 0;
+            for (Map.Entry<File, List<File>> e : results.entrySet()) {
+                boolean success = !e.getValue().isEmpty();
+                if (success) ok++;
+                System.out.printf("%-32s %-6s %s%n", e.getKey().getName(), success ? "ok" : "FAILED",
+                        success ? e.getValue().get(0).getPath() : "");
+            }
+            System.out.printf("📊 %d/%d videos in %.1fs%n", ok, results.size(), (System.currentTimeMillis() - start) / 1000.0);
+        } catch (Exception e) {
+            System.err.println("❌ Coordinator failed: " + e.getMessage());
+        } finally {
+            try {
+                queue.stop();
+            } catch (Exception ignored) {
+            }
+            for (Process p : started) {
+                try {
+                    if (!p.waitFor(30, TimeUnit.SECONDS)) p.destroy();
+                } catch (InterruptedException e) {
+                    p.destroy();
+                }
+            }
+            FfmpegRunner.removeListener(progress);
+            System.out.println("📊 " + FfmpegRunner.stats());
+        }
+    }
+
+    /** Starts a worker JVM with this process's runtime and class path; its output goes to queue/logs. */
+    private static Process startWorker(ShardQueue queue, String id) throws Exception {
+        String java = ProcessHandle.current().info().command()
+                .orElse(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        File log = new File(queue.root(), "logs/" + id + ".log");
+        log.getParentFile().mkdirs();
+
+        ProcessBuilder pb = new ProcessBuilder(java,
+                "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(), "quran-video-worker",
+                "--queue", queue.root().getAbsolutePath(),
+                "--id", id);
+        pb.redirectErrorStream(true);
+        pb.redirectOutput(log);
+        System.out.println("👷 Started worker " + id + " (log: " + log.getPath() + ")");
+        return pb.start();
+    }
+}
@@ -0,0 +1,58 @@
+package com.syntex.islamicstudio.commands;
+
+import java.io.File;
+
+import com.syntex.islamicstudio.cli.CommandCategory;
+import com.syntex.islamicstudio.media.FfmpegRunner;
+import com.syntex.islamicstudio.media.quran.ShardQueue;
+import com.syntex.islamicstudio.media.quran.ShardWorker;
+
+import picocli.CommandLine;
+
+@CommandLine.Command(
+        name = "quran-video-worker",
+        description = "Render tasks from a shared quran-video-coordinator queue until it is stopped"
+)
+@CommandCategory("Media")
+public class QuranVideoWorkerCommand implements Runnable {
+
+    @CommandLine.Option(
+            names = {"--queue"},
+            required = true,
+            description = "Queue directory shared with the coordinator"
+    )
+    private File queueDir;
+
+    @CommandLine.Option(
+            names = {"--id"},
+            description = "Worker id shown in the queue (default: <host>-<pid>)"
+    )
+    private String workerId;
+
+    @Override
+    public void run() {
+        String id = workerId != null ? workerId : defaultId();
+        FfmpegRunner.ProgressListener progress = FfmpegRunner.console();
+        FfmpegRunner.addListener(progress);
+        try {
+            System.out.println("👷 Worker " + id + " polling " + queueDir);
+            int rendered = new ShardWorker(new ShardQueue(queueDir), id).run();
+            System.out.println("✅ Worker " + id + " finished " + rendered + " task(s)");
+        } catch (Exception e) {
+            System.err.println("❌ Worker " + id + " stopped: " + e.getMessage());
+        } finally {
+            FfmpegRunner.removeListener(progress);
+            System.out.println("📊 " + FfmpegRunner.stats());
+        }
+    }
+
+    private static String defaultId() {
+        String host;
+        try {
+            host = java.net.InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "worker";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+}
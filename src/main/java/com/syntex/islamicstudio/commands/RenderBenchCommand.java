@@ -0,0 +1,243 @@
+package com.syntex.islamicstudio.commands;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.syntex.islamicstudio.cli.CommandCategory;
+import com.syntex.islamicstudio.util.FontRegistry;
+import com.syntex.islamicstudio.util.image.ImageFormat;
+
+import picocli.CommandLine;
+
+@CommandLine.Command(
+        name = "render-bench",
+        description = "Benchmark rendering building blocks (image encoders, font lookups) on synthetic workloads"
+)
+@CommandCategory("Utility")
+public class RenderBenchCommand implements Runnable {
+
+    public enum Suite {
+        SINKS,
+        FONTS
+    }
+
+    @CommandLine.Option(
+            names = {"--suite"},
+            description = "Benchmark suite: ${COMPLETION-CANDIDATES} (default: SINKS)"
+    )
+    private Suite suite = Suite.SINKS;
+
+    @CommandLine.Option(
+            names = {"-n", "--iterations"},
+            description = "Timed iterations per case (default: 10)"
+    )
+    private int iterations = 10;
+
+    @CommandLine.Option(
+            names = {"--width"},
+            description = "Synthetic frame width (default: 1920)"
+    )
+    private int width = 1920;
+
+    @CommandLine.Option(
+            names = {"--height"},
+            description = "Synthetic frame height (default: 1080)"
+    )
+    private int height = 1080;
+
+    @Override
+    public void run() {
+        iterations = Math.max(1, iterations);
+        try {
+            switch (suite) {
+                case SINKS -> benchSinks();
+                case FONTS -> benchFonts();
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Benchmark failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void benchSinks() throws Exception {
+        BufferedImage card = syntheticCard(width, height);
+        BufferedImage photo = syntheticPhoto(width, height);
+
+        System.out.printf("⏱ Image sinks, %dx%d, %d iterations%n", width, height, iterations);
+        System.out.printf("%-14s %-6s %10s %10s %10s%n", "format", "image", "ms/img", "MPix/s", "KB");
+        for (ImageFormat format : ImageFormat.values()) {
+            benchSink(format, "card", card);
+            benchSink(format, "photo", photo);
+        }
+    }
+
+    private void benchSink(ImageFormat format, String label, BufferedImage img) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(img.getWidth() * img.getHeight() * 4);
+        format.sink().write(img, bos); // warm-up
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bos.reset();
+            format.sink().write(img, bos);
+        }
+        double ms = (System.nanoTime() - start) / 1e6 / iterations;
+        double mpix = img.getWidth() * (double) img.getHeight() / 1e6 / (ms / 1000.0);
+        System.out.printf("%-14s %-6s %10.1f %10.1f %10d%n", format, label, ms, mpix, bos.size() / 1024);
+    }
+
+    /**
+     * Font work of one hadith card: a base font per text block, a size per step of
+     * its binary-search fit, and the chip font. "direct" repeats what the card did
+     * before the registry ({@code new Font} per block and {@code deriveFont} per fit
+     * step); "registry" makes the same requests through {@link FontRegistry}.
+     *
+     * The Qur'an font of a verse card is timed the same way: "parse" reads and parses
+     * the bundled TTF on every call, as the old FontLoader did; "registry" asks
+     * {@link FontRegistry#quran} for it.
+     */
+    private void benchFonts() throws Exception {
+        System.out.printf("⏱ Fonts, one card's requests, %d iterations%n", iterations);
+        System.out.printf("%-10s %10s %10s%n", "path", "ms/img", "fonts/img");
+        benchFonts("direct", this::directFonts);
+        benchFonts("registry", this::registryFonts);
+        System.out.printf("⏱ Qur'an font, one card's request, %d iterations%n", iterations);
+        System.out.printf("%-10s %10s %10s%n", "path", "ms/img", "fonts/img");
+        benchFonts("parse", this::parsedQuranFont);
+        benchFonts("registry", this::registryQuranFont);
+        System.out.println("📊 " + FontRegistry.size() + " fonts held by the registry");
+    }
+
+    private void benchFonts(String label, FontWorkload workload) throws Exception {
+        for (int i = 0; i < iterations; i++) workload.run(); // warm-up; the per-call work is tiny, so JIT dominates one pass
+        int fonts = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) fonts = workload.run();
+        double ms = (System.nanoTime() - start) / 1e6 / iterations;
+        System.out.printf("%-10s %10.3f %10d%n", label, ms, fonts);
+    }
+
+    private int directFonts() {
+        int n = 0;
+        for (FitBlock block : CARD_BLOCKS) {
+            Font base = new Font(block.family(), block.style(), block.size());
+            n++;
+            for (int size : block.steps()) {
+                n += base.deriveFont((float) size).getSize() > 0 ? 1 : 0;
+            }
+        }
+        for (int i = 0; i < CHIP_LOOKUPS; i++) {
+            n += new Font("SansSerif", Font.BOLD, 22).getSize() > 0 ? 1 : 0;
+        }
+        return n;
+    }
+
+    private int registryFonts() {
+        int n = 0;
+        for (FitBlock block : CARD_BLOCKS) {
+            Font base = FontRegistry.font(block.family(), block.style(), block.size());
+            n++;
+            for (int size : block.steps()) {
+                n += FontRegistry.derive(base, (float) size).getSize() > 0 ? 1 : 0;
+            }
+        }
+        for (int i = 0; i < CHIP_LOOKUPS; i++) {
+            n += FontRegistry.font("SansSerif", Font.BOLD, 22).getSize() > 0 ? 1 : 0;
+        }
+        return n;
+    }
+
+    private int parsedQuranFont() throws Exception {
+        try (InputStream is = RenderBenchCommand.class.getResourceAsStream(FontRegistry.AL_QALAM)) {
+            if (is == null) throw new IllegalStateException("Font not found in resources: " + FontRegistry.AL_QALAM);
+            return Font.createFont(Font.TRUETYPE_FONT, is).deriveFont(QURAN_SIZE).getSize() > 0 ? 1 : 0;
+        }
+    }
+
+    private int registryQuranFont() {
+        return FontRegistry.quran(QURAN_SIZE).getSize() > 0 ? 1 : 0;
+    }
+
+    @FunctionalInterface
+    private interface FontWorkload {
+        int run() throws Exception;
+    }
+
+    /** A text block fitted from {@code size} down to {@code min}, settling on {@code fitted}. */
+    private record FitBlock(String family, int style, int size, int min, int fitted) {
+
+        /** Sizes the binary search in TextFitEngine tries on the way to {@code fitted}. */
+        int[] steps() {
+            List<Integer> steps = new ArrayList<>();
+            int lo = min, hi = size;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                steps.add(mid);
+                if (mid <= fitted) lo = mid + 1;
+                else hi = mid - 1;
+            }
+            return steps.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /** Title (plus its line-height probe), book line, narrator and body of a typical card. */
+    private static final FitBlock[] CARD_BLOCKS = {
+            new FitBlock("Serif", Font.BOLD, 56, 56, 56),
+            new FitBlock("Serif", Font.BOLD, 56, 28, 44),
+            new FitBlock("Serif", Font.ITALIC, 30, 18, 26),
+            new FitBlock("SansSerif", Font.BOLD, 30, 18, 30),
+            new FitBlock("Serif", Font.ITALIC, 32, 18, 23),
+    };
+
+    /** Chip block height, chip widths and the chip font itself. */
+    private static final int CHIP_LOOKUPS = 3;
+
+    /** Arabic size of a verse card. */
+    private static final float QURAN_SIZE = 48f;
+
+    /** Mostly transparent ARGB frame with a band of text, like a video card sprite. */
+    private static BufferedImage syntheticCard(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(new Font("Serif", Font.BOLD, h / 20));
+        for (int y = h / 3; y < h * 2 / 3; y += h / 15) {
+            g.setColor(new Color(0, 0, 0, 180));
+            g.drawString("In the name of Allah, the Most Gracious, the Most Merciful", w / 10 + 3, y + 3);
+            g.setColor(Color.WHITE);
+            g.drawString("In the name of Allah, the Most Gracious, the Most Merciful", w / 10, y);
+        }
+        g.dispose();
+        return img;
+    }
+
+    /** Opaque frame with gradients and grain, like a hadith card export. */
+    private static BufferedImage syntheticPhoto(int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(22, 40, 80), w, h, new Color(200, 150, 60)));
+        g.fillRect(0, 0, w, h);
+        g.dispose();
+        Random rng = new Random(42);
+        for (int i = 0; i < w * h / 8; i++) {
+            int x = rng.nextInt(w), y = rng.nextInt(h);
+            int rgb = img.getRGB(x, y);
+            int d = rng.nextInt(17) - 8;
+            int r = clamp(((rgb >> 16) & 0xFF) + d), gr = clamp(((rgb >> 8) & 0xFF) + d), b = clamp((rgb & 0xFF) + d);
+            img.setRGB(x, y, r << 16 | gr << 8 | b);
+        }
+        return img;
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+}
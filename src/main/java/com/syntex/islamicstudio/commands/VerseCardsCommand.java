@@ -0,0 +1,232 @@
+package com.syntex.islamicstudio.commands;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.syntex.islamicstudio.cli.CommandCategory;
+import com.syntex.islamicstudio.db.DatabaseManager;
+import com.syntex.islamicstudio.util.CpuBudget;
+import com.syntex.islamicstudio.util.RenderPool;
+import com.syntex.islamicstudio.util.VerseImageGenerator;
+import com.syntex.islamicstudio.util.image.ImageFormat;
+import com.syntex.islamicstudio.util.image.ImageSink;
+
+import picocli.CommandLine;
+
+@CommandLine.Command(
+        name = "verse-cards",
+        description = "Export verse cards (Arabic, translation, footnotes) for an ayah range, a surah or the whole mushaf"
+)
+@CommandCategory("Quran")
+public class VerseCardsCommand implements Runnable {
+
+    private static final int PROGRESS_EVERY = 250;
+
+    @CommandLine.Option(
+            names = {"--surah"},
+            description = "Export every ayah of this surah (1-114)"
+    )
+    private Integer surah;
+
+    @CommandLine.Option(
+            names = {"--from"},
+            description = "First ayah of a range, as SURAH:AYAH (e.g. 2:255)"
+    )
+    private String from;
+
+    @CommandLine.Option(
+            names = {"--to"},
+            description = "Last ayah of a range, as SURAH:AYAH (default: the end of --from's surah)"
+    )
+    private String to;
+
+    @CommandLine.Option(
+            names = {"--all"},
+            description = "Export all 6,236 ayat"
+    )
+    private boolean all = false;
+
+    @CommandLine.Option(
+            names = {"-o", "--output-dir"},
+            description = "Directory for the cards (default: output/verses)"
+    )
+    private File outputDir = new File("output/verses");
+
+    @CommandLine.Option(
+            names = {"--format"},
+            description = "Encoder: ${COMPLETION-CANDIDATES} (default: PNG_FAST)"
+    )
+    private ImageFormat format = ImageFormat.PNG_FAST;
+
+    @Override
+    public void run() {
+        int[] range;
+        try {
+            range = range();
+        } catch (IllegalArgumentException e) {
+            System.err.println("❌ " + e.getMessage());
+            return;
+        }
+
+        // One pass over the range: text, translation and footnotes come back as consecutive
+        // rows per ayah (one per footnote), so the result set is streamed, not collected
+        String sql = """
+            SELECT a.surah_id, a.ayah_number, s.name_ar,
+                   t.text, tr.translation, f.marker, f.content
+            FROM ayah a
+            JOIN surah s ON s.id = a.surah_id
+            LEFT JOIN ayah_text t ON t.ayah_id = a.id AND t.source_id = 1
+            LEFT JOIN ayah_translation tr ON tr.ayah_id = a.id AND tr.source_id = 1
+            LEFT JOIN translation_footnote f ON f.ayah_translation_id = tr.id
+            WHERE (a.surah_id > ? OR (a.surah_id = ? AND a.ayah_number >= ?))
+              AND (a.surah_id < ? OR (a.surah_id = ? AND a.ayah_number <= ?))
+            ORDER BY a.surah_id, a.ayah_number, f.id
+        """;
+
+        ImageSink sink = format.sink();
+        outputDir.mkdirs();
+        int rendered = 0;
+        int failed = 0;
+        long start = System.currentTimeMillis();
+        Deque<Future<File>> inFlight = new ArrayDeque<>();
+
+        // Keeps the render share of the cores while the export runs
+        CpuBudget.Lease lease = CpuBudget.render();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, range[0]);
+            ps.setInt(2, range[0]);
+            ps.setInt(3, range[1]);
+            ps.setInt(4, range[2]);
+            ps.setInt(5, range[2]);
+            ps.setInt(6, range[3]);
+            ps.setFetchSize(512);
+
+            System.out.printf("🖼 Exporting verse cards %d:%d - %d:%s to %s (%s)%n", range[0], range[1], range[2],
+                    range[3] == Integer.MAX_VALUE ? "end" : String.valueOf(range[3]), outputDir, format);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                Verse current = null;
+                while (rs.next()) {
+                    int surahId = rs.getInt("surah_id");
+                    int ayahNumber = rs.getInt("ayah_number");
+                    if (current == null || current.surahId != surahId || current.ayahNumber != ayahNumber) {
+                        if (current != null) inFlight.add(submit(current, sink));
+                        current = new Verse(surahId, ayahNumber, rs.getString("name_ar"),
+                                rs.getString("text"), rs.getString("translation"));
+                    }
+                    String content = rs.getString("content");
+                    if (content != null) {
+                        current.footnotes.append("[").append(rs.getString("marker")).append("] ")
+                                .append(content).append(" ");
+                    }
+
+                    // The render pool's window blocks submit() once it is full; drain what has finished
+                    while (!inFlight.isEmpty() && inFlight.peekFirst().isDone()) {
+                        if (collect(inFlight.pollFirst())) rendered++;
+                        else failed++;
+                        if ((rendered + failed) % PROGRESS_EVERY == 0) progress(rendered, start);
+                    }
+                }
+                if (current != null) inFlight.add(submit(current, sink));
+            }
+
+            while (!inFlight.isEmpty()) {
+                if (collect(inFlight.pollFirst())) rendered++;
+                else failed++;
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Verse card export failed: " + e.getMessage());
+            for (Future<File> f : inFlight) f.cancel(true);
+            return;
+        } finally {
+            lease.close();
+        }
+
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+        if (rendered + failed == 0) {
+            System.out.println("⚠ No ayat found in that range (has the Qur'an been imported?)");
+            return;
+        }
+        System.out.printf("📊 %d card(s) in %.1fs (%.1f images/s)%s%n", rendered, seconds,
+                rendered / Math.max(seconds, 0.001), failed > 0 ? ", " + failed + " failed" : "");
+    }
+
+    private Future<File> submit(Verse verse, ImageSink sink) throws InterruptedException {
+        File out = new File(outputDir, String.format("ayah_%03d_%03d.%s", verse.surahId, verse.ayahNumber, sink.extension()));
+        return RenderPool.shared().submit(() -> VerseImageGenerator.writeVerseImage(
+                verse.surahName, verse.ayahNumber,
+                verse.arabic != null ? verse.arabic : "(no text)",
+                verse.translation != null ? verse.translation : "(no translation)",
+                verse.footnotes.toString(),
+                sink, out));
+    }
+
+    private static boolean collect(Future<File> future) throws InterruptedException {
+        try {
+            future.get();
+            return true;
+        } catch (ExecutionException e) {
+            System.err.println("⚠ " + e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    private static void progress(int rendered, long start) {
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+        System.out.printf("⏳ %d cards, %.1f images/s%n", rendered, rendered / Math.max(seconds, 0.001));
+    }
+
+    /** {fromSurah, fromAyah, toSurah, toAyah} from the options. */
+    private int[] range() {
+        int modes = (surah != null ? 1 : 0) + (from != null ? 1 : 0) + (all ? 1 : 0);
+        if (modes != 1) throw new IllegalArgumentException("Specify exactly one of --surah, --from or --all");
+        if (to != null && from == null) throw new IllegalArgumentException("--to needs --from");
+
+        if (all) return new int[] {1, 1, 114, Integer.MAX_VALUE};
+        if (surah != null) {
+            if (surah < 1 || surah > 114) throw new IllegalArgumentException("Surah must be between 1 and 114: " + surah);
+            return new int[] {surah, 1, surah, Integer.MAX_VALUE};
+        }
+        int[] start = parseRef(from);
+        int[] end = to != null ? parseRef(to) : new int[] {start[0], Integer.MAX_VALUE};
+        if (end[0] < start[0] || (end[0] == start[0] && end[1] < start[1])) {
+            throw new IllegalArgumentException("--to " + to + " is before --from " + from);
+        }
+        return new int[] {start[0], start[1], end[0], end[1]};
+    }
+
+    private static int[] parseRef(String ref) {
+        String[] parts = ref.trim().split(":");
+        try {
+            if (parts.length != 2) throw new NumberFormatException();
+            return new int[] {Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim())};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected SURAH:AYAH, got '" + ref + "'");
+        }
+    }
+
+    /** One ayah collected from consecutive result rows. */
+    private static class Verse {
+        final int surahId;
+        final int ayahNumber;
+        final String surahName;
+        final String arabic;
+        final String translation;
+        final StringBuilder footnotes = new StringBuilder();
+
+        Verse(int surahId, int ayahNumber, String surahName, String arabic, String translation) {
+            this.surahId = surahId;
+            this.ayahNumber = ayahNumber;
+            this.surahName = surahName;
+            this.arabic = arabic;
+            this.translation = translation;
+        }
+    }
+}
@@ -1,18 +1,138 @@
 package com.syntex.islamicstudio.db;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Small pool of SQLite connections.
+ *
+ * {@link #getConnection()} hands out a wrapper whose {@code close()} returns the
+ * underlying connection to the pool, so callers keep using try-with-resources
+ * and concurrent jobs each get their own connection instead of closing one
+ * shared connection under each other's feet.
+ *
+ * Pooled connections stay open for the whole JVM, so statements a caller leaves
+ * open are closed when its wrapper is, before the connection goes back to the pool.
+ */
 public class DatabaseManager {
 
     private static final String DB_URL = "jdbc:sqlite:islamicstudio.db";
-    private static Connection conn;
+    private static final int MAX_CONNECTIONS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private static final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    private static int open;
 
     public static Connection getConnection() throws SQLException {
-        if (conn == null || conn.isClosed()) {
-            conn = DriverManager.getConnection(DB_URL);
+        Connection physical = borrow();
+        return (Connection) Proxy.newProxyInstance(
+                DatabaseManager.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                new InvocationHandler() {
+                    private boolean closed;
+                    private final List<Statement> statements = new ArrayList<>();
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        switch (method.getName()) {
+                            case "close" -> {
+                                if (!closed) {
+                                    closed = true;
+                                    closeAll(statements);
+                                    release(physical);
+                                }
+                                return null;
+                            }
+                            case "isClosed" -> {
+                                return closed || physical.isClosed();
+                            }
+                            default -> {
+                                if (closed) throw new SQLException("Connection returned to pool");
+                                Object result;
+                                try {
+                                    result = method.invoke(physical, args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                                if (result instanceof Statement statement) {
+                                    // Importers prepare a statement per row; forget the ones already closed
+                                    if (statements.size() >= 64) statements.removeIf(DatabaseManager::isClosed);
+                                    statements.add(statement);
+                                }
+                                return result;
+                            }
+                        }
+                    }
+                });
+    }
+
+    private static Connection borrow() throws SQLException {
+        while (true) {
+            Connection conn = idle.pollFirst();
+            if (conn != null) {
+                if (!conn.isClosed()) return conn;
+                synchronized (DatabaseManager.class) {
+                    open--;
+                }
+                continue;
+            }
+            synchronized (DatabaseManager.class) {
+                if (open < MAX_CONNECTIONS) {
+                    Connection created = DriverManager.getConnection(DB_URL);
+                    open++;
+                    return created;
+                }
+            }
+            try {
+                conn = idle.pollFirst(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            }
+            if (conn != null) idle.addFirst(conn);
+        }
+    }
+
+    /** Closes the statements (and so their result sets) still open on a borrowed connection. */
+    private static void closeAll(List<Statement> statements) {
+        for (Statement statement : statements) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                System.err.println("⚠ Failed to close statement: " + e.getMessage());
+            }
+        }
+        statements.clear();
+    }
+
+    private static boolean isClosed(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private static void release(Connection conn) throws SQLException {
+        if (conn.isClosed()) {
+            synchronized (DatabaseManager.class) {
+                open--;
+            }
+            return;
+        }
+        if (!conn.getAutoCommit()) {
+            conn.rollback();
+            conn.setAutoCommit(true);
         }
-        return conn;
+        idle.addFirst(conn);
     }
 }
@@ -0,0 +1,58 @@
+package com.syntex.islamicstudio.media;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.syntex.islamicstudio.util.CpuBudget;
+import com.syntex.islamicstudio.util.FileHashes;
+
+/**
+ * Disk cache of recitation audio pre-encoded to AAC.
+ *
+ * The source is encoded once per content hash into output/cache/audio, in an
+ * M4A container that muxes straight into the MP4 outputs. Renders that do not
+ * mix in background audio can then stream-copy the track ({@code -c:a copy})
+ * and spend their encode time on video only.
+ */
+public class AudioTrackCache {
+
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    private static final File CACHE_DIR = new File("output/cache/audio");
+    private static final String BITRATE = "192k";
+
+    public static File prepare(File source) throws Exception {
+        CACHE_DIR.mkdirs();
+        String key = FileHashes.shortHash(source) + "_aac" + BITRATE;
+        // Concurrent jobs asking for the same variant wait for one transcode instead of racing on the .part file
+        synchronized (LOCKS.computeIfAbsent(key, k -> new Object())) {
+            File cached = new File(CACHE_DIR, key + ".m4a");
+            if (cached.exists() && cached.length() > 0) {
+                System.out.println("♻️ Audio cache hit: " + source.getName() + " -> " + cached.getName());
+                return cached;
+            }
+
+            System.out.println("🎧 Encoding recitation " + source.getName() + " to AAC " + BITRATE);
+            File tmp = new File(CACHE_DIR, key + "." + ProcessHandle.current().pid() + ".part.m4a");
+            try (CpuBudget.Lease lease = CpuBudget.encode()) {
+                List<String> cmd = List.of(
+                        "ffmpeg", "-y", "-loglevel", "error",
+                        "-i", source.getAbsolutePath(),
+                        "-vn",
+                        "-c:a", "aac", "-b:a", BITRATE,
+                        "-threads", String.valueOf(lease.threads()),
+                        "-movflags", "+faststart",
+                        tmp.getAbsolutePath());
+                FfmpegRunner.run("audio " + source.getName(), MediaProbe.duration(source), cmd);
+            } catch (Exception e) {
+                tmp.delete();
+                throw e;
+            }
+            Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return cached;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.syntex.islamicstudio.media;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.syntex.islamicstudio.util.CpuBudget;
+import com.syntex.islamicstudio.util.FileHashes;
+
+/**
+ * Disk cache of background clips pre-transcoded to a target geometry.
+ *
+ * Each downloaded clip is scaled to cover the target size, cropped, resampled
+ * to the target frame rate and pixel format once, and stored under
+ * output/cache/backgrounds keyed by the source's content hash. The final
+ * encode can then feed the clips straight into compositing without
+ * re-scaling or re-timing them on every run.
+ */
+public class BackgroundCache {
+
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+    private static final File CACHE_DIR = new File("output/cache/backgrounds");
+
+    /** Returns cached variants for all sources, transcoding the ones that are missing. */
+    public static List<File> prepareAll(List<File> sources, int width, int height, int fps, String pixelFormat) throws Exception {
+        List<File> out = new ArrayList<>(sources.size());
+        for (File source : sources) {
+            out.add(prepare(source, width, height, fps, pixelFormat));
+        }
+        return out;
+    }
+
+    public static File prepare(File source, int width, int height, int fps, String pixelFormat) throws Exception {
+        CACHE_DIR.mkdirs();
+        String key = FileHashes.shortHash(source) + "_" + width + "x" + height + "_" + fps + "_" + pixelFormat;
+        // Concurrent jobs asking for the same variant wait for one transcode instead of racing on the .part file
+        synchronized (LOCKS.computeIfAbsent(key, k -> new Object())) {
+            File cached = new File(CACHE_DIR, key + ".mp4");
+            if (cached.exists() && cached.length() > 0) {
+                System.out.println("♻️ Background cache hit: " + source.getName() + " -> " + cached.getName());
+                return cached;
+            }
+
+            System.out.println("🎞 Pre-transcoding background " + source.getName() + " to " + width + "x" + height + "@" + fps);
+            File tmp = new File(CACHE_DIR, key + "." + ProcessHandle.current().pid() + ".part.mp4");
+            try (CpuBudget.Lease lease = CpuBudget.encode()) {
+                List<String> cmd = List.of(
+                        "ffmpeg", "-y", "-loglevel", "error",
+                        "-i", source.getAbsolutePath(),
+                        "-map", "0:v:0", "-map", "0:a?",
+                        "-vf", "scale=" + width + ":" + height + ":force_original_aspect_ratio=increase"
+                                + ",crop=" + width + ":" + height
+                                + ",fps=" + fps
+                                + ",format=" + pixelFormat,
+                        "-c:v", "libx264", "-preset", "veryfast", "-crf", "18",
+                        "-g", String.valueOf(fps),
+                        "-c:a", "aac", "-b:a", "128k",
+                        "-threads", String.valueOf(lease.threads()),
+                        "-movflags", "+faststart",
+                        tmp.getAbsolutePath());
+                FfmpegRunner.run("background " + source.getName(), MediaProbe.duration(source), cmd);
+            } catch (Exception e) {
+                tmp.delete();
+                throw e;
+            }
+            Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return cached;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.syntex.islamicstudio.media;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs ffmpeg with {@code -progress pipe:1} and turns its key=value progress
+ * blocks into {@link Progress} events for the registered listeners, instead
+ * of inheriting ffmpeg's console output.
+ *
+ * Only errors reach stderr; the last lines are kept for the exception when a
+ * run fails. Every run also feeds the process-wide {@link #stats()}.
+ */
+public final class FfmpegRunner {
+
+    /** One progress block. Times are in seconds; {@code speed} is media time per wall time. */
+    public record Progress(String label, long frame, double fps, double speed, double outTimeSeconds,
+                           double durationSeconds, long droppedFrames, long duplicatedFrames, boolean finished) {
+
+        /** 0-100, or -1 when the expected duration is unknown. */
+        public double percent() {
+            return durationSeconds > 0 ? Math.min(100, outTimeSeconds * 100 / durationSeconds) : -1;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(Progress progress);
+    }
+
+    /** Totals over every ffmpeg run in this JVM. */
+    public record Stats(int runs, double mediaSeconds, double wallSeconds, long droppedFrames) {
+
+        /** Overall media seconds encoded per wall second. */
+        public double speed() {
+            return wallSeconds == 0 ? 0 : mediaSeconds / wallSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ffmpeg: %d runs, %.1fs media in %.1fs (%.2fx), %d dropped frames",
+                    runs, mediaSeconds, wallSeconds, speed(), droppedFrames);
+        }
+    }
+
+    private static final int ERROR_TAIL = 20;
+    private static final List<ProgressListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private static int runs;
+    private static double mediaSeconds;
+    private static double wallSeconds;
+    private static long droppedFrames;
+
+    private FfmpegRunner() {
+    }
+
+    public static void addListener(ProgressListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(ProgressListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    public static synchronized Stats stats() {
+        return new Stats(runs, mediaSeconds, wallSeconds, droppedFrames);
+    }
+
+    /**
+     * Runs {@code cmd} (starting with "ffmpeg") and returns its final progress.
+     * {@code expectedDuration} (seconds, or 0 if unknown) only feeds {@link Progress#percent()}.
+     */
+    public static Progress run(String label, double expectedDuration, List<String> cmd) throws IOException, InterruptedException {
+        if (cmd.isEmpty() || !cmd.get(0).endsWith("ffmpeg")) throw new IllegalArgumentException("Not an ffmpeg command: " + cmd);
+        List<String> full = new ArrayList<>(cmd.size() + 8);
+        full.add(cmd.get(0));
+        full.add("-hide_banner");
+        full.add("-nostats");
+        full.add("-progress"); full.add("pipe:1");
+        if (!cmd.contains("-loglevel") && !cmd.contains("-v")) {
+            full.add("-loglevel"); full.add("error");
+        }
+        full.addAll(cmd.subList(1, cmd.size()));
+
+        long start = System.nanoTime();
+        Process proc = new ProcessBuilder(full).start();
+
+        Deque<String> errorTail = new ArrayDeque<>();
+        Thread stderr = new Thread(() -> {
+            try (BufferedReader err = new BufferedReader(new InputStreamReader(proc.getErrorStream()))) {
+                String line;
+                while ((line = err.readLine()) != null) {
+                    System.err.println("[" + label + "] " + line);
+                    synchronized (errorTail) {
+                        if (errorTail.size() == ERROR_TAIL) errorTail.removeFirst();
+                        errorTail.addLast(line);
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }, "ffmpeg-stderr");
+        stderr.setDaemon(true);
+        stderr.start();
+
+        Progress last = new Progress(label, 0, 0, 0, 0, expectedDuration, 0, 0, false);
+        Map<String, String> block = new HashMap<>();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(proc.getInputStream()))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                int eq = line.indexOf('=');
+                if (eq <= 0) continue;
+                String key = line.substring(0, eq).trim();
+                String value = line.substring(eq + 1).trim();
+                if (!key.equals("progress")) {
+                    block.put(key, value);
+                    continue;
+                }
+                last = toProgress(label, expectedDuration, block, value.equals("end"));
+                block.clear();
+                for (ProgressListener listener : LISTENERS) listener.onProgress(last);
+            }
+        }
+
+        int exit = proc.waitFor();
+        stderr.join(1000);
+        double wall = (System.nanoTime() - start) / 1e9;
+        synchronized (FfmpegRunner.class) {
+            runs++;
+            wallSeconds += wall;
+            mediaSeconds += last.outTimeSeconds();
+            droppedFrames += last.droppedFrames();
+        }
+        if (exit != 0) {
+            String tail;
+            synchronized (errorTail) {
+                tail = String.join("\n", errorTail);
+            }
+            throw new IllegalStateException(label + ": ffmpeg failed with exit code " + exit
+                    + (tail.isEmpty() ? "" : "\n" + tail));
+        }
+        return last;
+    }
+
+    private static Progress toProgress(String label, double duration, Map<String, String> block, boolean finished) {
+        String speed = block.getOrDefault("speed", "0").replace("x", "");
+        // out_time_us and (despite the name) out_time_ms are both microseconds
+        String outTime = block.getOrDefault("out_time_us", block.getOrDefault("out_time_ms", "0"));
+        return new Progress(label,
+                parseLong(block.get("frame")),
+                parseDouble(block.get("fps")),
+                parseDouble(speed),
+                parseLong(outTime) / 1e6,
+                duration,
+                parseLong(block.get("drop_frames")),
+                parseLong(block.get("dup_frames")),
+                finished);
+    }
+
+    private static long parseLong(String s) {
+        try {
+            return s == null ? 0 : Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return 0; // "N/A" before the first frame
+        }
+    }
+
+    private static double parseDouble(String s) {
+        try {
+            return s == null ? 0 : Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Listener that prints one progress line per run about once a second, plus the final one. */
+    public static ProgressListener console() {
+        Map<String, Long> lastPrinted = new ConcurrentHashMap<>();
+        return p -> {
+            long now = System.currentTimeMillis();
+            Long prev = lastPrinted.get(p.label());
+            if (!p.finished() && prev != null && now - prev < 1000) return;
+            lastPrinted.put(p.label(), now);
+            if (p.finished()) lastPrinted.remove(p.label());
+
+            String pct = p.percent() >= 0 ? String.format("%5.1f%%", p.percent()) : "   ...";
+            System.out.printf("%s %-12s %s | %6.1fs | %6.1f fps | %5.2fx | dropped %d%n",
+                    p.finished() ? "✅" : "🎞", p.label(), pct, p.outTimeSeconds(), p.fps(), p.speed(), p.droppedFrames());
+        };
+    }
+}
@@ -0,0 +1,114 @@
+package com.syntex.islamicstudio.media;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * HLS media playlist over self-contained fragmented MP4 segments, rewritten as
+ * segments arrive.
+ *
+ * Each segment file is one fragmented MP4 (ftyp + empty moov, then moof/mdat
+ * pairs). The playlist points at its header with a byte-range EXT-X-MAP and at
+ * the fragments with EXT-X-BYTERANGE, so segments encoded by separate ffmpeg
+ * runs need no remux and no shared init segment. Only the contiguous run of
+ * finished segments from the start is listed, so a player can start on the
+ * first minutes while later ones (or a failed one being retried) are still
+ * encoding; {@link #finish()} closes the playlist.
+ */
+public class HlsPlaylist {
+
+    private final File file;
+    private final double[] durations;
+    private final File[] segments;
+    private final int targetDuration;
+
+    /** {@code durations} are the planned segment lengths in seconds; the target duration is fixed from them. */
+    public HlsPlaylist(File file, double[] durations) {
+        this.file = file;
+        this.durations = durations.clone();
+        this.segments = new File[durations.length];
+        double max = 0;
+        for (double d : durations) max = Math.max(max, d);
+        this.targetDuration = (int) Math.ceil(max);
+    }
+
+    public File file() {
+        return file;
+    }
+
+    /** Records segment {@code index} as written and republishes the playlist. */
+    public synchronized void add(int index, File segment) throws IOException {
+        segments[index] = segment;
+        write(false);
+    }
+
+    public synchronized boolean has(int index) {
+        return segments[index] != null;
+    }
+
+    /** Seconds of video playable from the start. */
+    public synchronized double readySeconds() {
+        double total = 0;
+        for (int i = 0; i < segments.length && segments[i] != null; i++) total += durations[i];
+        return total;
+    }
+
+    /** Writes the final playlist; every segment must have been added. */
+    public synchronized void finish() throws IOException {
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i] == null) throw new IllegalStateException("Segment " + i + " of " + file + " is missing");
+        }
+        write(true);
+    }
+
+    private void write(boolean complete) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#EXTM3U\n");
+        sb.append("#EXT-X-VERSION:7\n");
+        sb.append("#EXT-X-TARGETDURATION:").append(targetDuration).append('\n');
+        sb.append("#EXT-X-MEDIA-SEQUENCE:0\n");
+        sb.append("#EXT-X-PLAYLIST-TYPE:").append(complete ? "VOD" : "EVENT").append('\n');
+        sb.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        for (int i = 0; i < segments.length && segments[i] != null; i++) {
+            File segment = segments[i];
+            long header = headerLength(segment);
+            String uri = dir.toPath().relativize(segment.getAbsoluteFile().toPath()).toString().replace('\\', '/');
+            sb.append("#EXT-X-MAP:URI=\"").append(uri).append("\",BYTERANGE=\"").append(header).append("@0\"\n");
+            sb.append(String.format(Locale.ROOT, "#EXTINF:%.3f,%n", durations[i]));
+            sb.append("#EXT-X-BYTERANGE:").append(segment.length() - header).append('@').append(header).append('\n');
+            sb.append(uri).append('\n');
+        }
+        if (complete) sb.append("#EXT-X-ENDLIST\n");
+
+        // Players poll the playlist; they must never see it half written
+        File tmp = new File(dir, "." + file.getName() + "." + ProcessHandle.current().pid() + ".tmp");
+        Files.writeString(tmp.toPath(), sb.toString(), StandardCharsets.UTF_8);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Bytes before the first {@code moof} box, i.e. the ftyp + moov initialization section. */
+    static long headerLength(File segment) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "r")) {
+            long pos = 0;
+            long end = raf.length();
+            byte[] type = new byte[4];
+            while (pos + 8 <= end) {
+                raf.seek(pos);
+                long size = raf.readInt() & 0xFFFFFFFFL;
+                raf.readFully(type);
+                if (size == 1) size = raf.readLong();
+                if (new String(type, StandardCharsets.ISO_8859_1).equals("moof")) return pos;
+                if (size < 8) break;
+                pos += size;
+            }
+        }
+        throw new IOException("Not a fragmented MP4 (no moof box): " + segment);
+    }
+}
@@ -0,0 +1,274 @@
+package com.syntex.islamicstudio.media;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.syntex.islamicstudio.util.FileHashes;
+
+/**
+ * Duration and stream layout of media files, read in-JVM where possible.
+ *
+ * MP3s are read through mp3spi (its {@code duration} property), MP4/MOV files by
+ * walking the container's {@code moov} box (movie header for the duration, track
+ * handlers for audio/video). Anything else, or a file the native readers cannot
+ * make sense of, falls back to ffprobe. Results are cached by content hash in
+ * memory and in output/cache/media-probe.json, so unchanged inputs are never
+ * probed twice.
+ */
+public final class MediaProbe {
+
+    /** What a probe found; {@code source} says which reader produced it. */
+    public record Info(double durationSeconds, boolean hasAudio, boolean hasVideo, String source) {
+    }
+
+    private static final File CACHE_FILE = new File("output/cache/media-probe.json");
+    private static final Type CACHE_TYPE = new TypeToken<Map<String, Info>>() {}.getType();
+    private static final Gson GSON = new Gson();
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(4, new ThreadFactory() {
+        private final AtomicInteger n = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "probe-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static Map<String, Info> cache;
+
+    private MediaProbe() {
+    }
+
+    public static Info probe(File file) throws IOException {
+        String hash = FileHashes.sha256(file);
+        Info info = cache().get(hash);
+        if (info != null) return info;
+
+        info = probeUncached(file);
+        cache().put(hash, info);
+        saveCache();
+        return info;
+    }
+
+    public static double duration(File file) throws IOException {
+        return probe(file).durationSeconds();
+    }
+
+    /** Probes all files concurrently; results are in input order. */
+    public static List<Info> probeAll(List<File> files) throws IOException {
+        List<CompletableFuture<Info>> futures = new ArrayList<>(files.size());
+        for (File file : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return probe(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, EXECUTOR));
+        }
+
+        List<Info> infos = new ArrayList<>(files.size());
+        for (CompletableFuture<Info> future : futures) {
+            try {
+                infos.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException u) throw u.getCause();
+                throw e;
+            }
+        }
+        return infos;
+    }
+
+    private static Info probeUncached(File file) throws IOException {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        Info info = null;
+        try {
+            if (name.endsWith(".mp3")) info = probeMp3(file);
+            else if (name.endsWith(".mp4") || name.endsWith(".m4a") || name.endsWith(".mov")) info = probeMp4(file);
+        } catch (Exception e) {
+            System.err.println("⚠ Native probe failed for " + file.getName() + ", falling back to ffprobe: " + e.getMessage());
+        }
+        return info != null ? info : probeFfprobe(file);
+    }
+
+    private static Info probeMp3(File file) throws Exception {
+        AudioFileFormat format = AudioSystem.getAudioFileFormat(file);
+        Object micros = format.properties().get("duration");
+        if (!(micros instanceof Long us) || us <= 0) return null;
+        return new Info(us / 1_000_000.0, true, false, "mp3spi");
+    }
+
+    // --- MP4 -----------------------------------------------------------------
+
+    private static final class Mp4Scan {
+        double duration = -1;
+        boolean audio;
+        boolean video;
+    }
+
+    private static Info probeMp4(File file) throws IOException {
+        Mp4Scan scan = new Mp4Scan();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            walkBoxes(raf, 0, raf.length(), scan);
+        }
+        // Fragmented MP4 (empty_moov, e.g. our own HLS segments) leaves mvhd at 0: let ffprobe sum the fragments
+        if (scan.duration <= 0) return null;
+        return new Info(scan.duration, scan.audio, scan.video, "mp4");
+    }
+
+    /** Walks the boxes in [start, end), descending into the containers on the moov → trak → mdia path. */
+    private static void walkBoxes(RandomAccessFile raf, long start, long end, Mp4Scan scan) throws IOException {
+        long pos = start;
+        while (pos + 8 <= end) {
+            raf.seek(pos);
+            long size = raf.readInt() & 0xFFFFFFFFL;
+            String type = readType(raf);
+            int header = 8;
+            if (size == 1) {
+                size = raf.readLong();
+                header = 16;
+            } else if (size == 0) {
+                size = end - pos;
+            }
+            if (size < header || pos + size > end) break;
+
+            long body = pos + header;
+            switch (type) {
+                case "moov", "trak", "mdia" -> walkBoxes(raf, body, pos + size, scan);
+                case "mvhd" -> scan.duration = readMovieDuration(raf, body);
+                case "hdlr" -> {
+                    raf.seek(body + 8); // version/flags, pre_defined
+                    String handler = readType(raf);
+                    if (handler.equals("soun")) scan.audio = true;
+                    else if (handler.equals("vide")) scan.video = true;
+                }
+                default -> { }
+            }
+            pos += size;
+        }
+    }
+
+    private static double readMovieDuration(RandomAccessFile raf, long body) throws IOException {
+        raf.seek(body);
+        int version = raf.readUnsignedByte();
+        raf.skipBytes(3); // flags
+        long timescale;
+        long duration;
+        if (version == 1) {
+            raf.skipBytes(16); // creation/modification time
+            timescale = raf.readInt() & 0xFFFFFFFFL;
+            duration = raf.readLong();
+            if (duration == -1L) return -1; // all ones: unknown
+        } else {
+            raf.skipBytes(8);
+            timescale = raf.readInt() & 0xFFFFFFFFL;
+            duration = raf.readInt() & 0xFFFFFFFFL;
+            if (duration == 0xFFFFFFFFL) return -1;
+        }
+        return timescale == 0 ? -1 : duration / (double) timescale;
+    }
+
+    private static String readType(RandomAccessFile raf) throws IOException {
+        byte[] b = new byte[4];
+        raf.readFully(b);
+        return new String(b, StandardCharsets.ISO_8859_1);
+    }
+
+    // --- ffprobe -------------------------------------------------------------
+
+    private static Info probeFfprobe(File file) throws IOException {
+        ProcessBuilder pb = new ProcessBuilder("ffprobe", "-v", "error",
+                "-show_entries", "format=duration:stream=codec_type",
+                "-of", "json",
+                file.getAbsolutePath());
+        Process proc = pb.start();
+        String output = new String(proc.getInputStream().readAllBytes()).trim();
+        String error = new String(proc.getErrorStream().readAllBytes()).trim();
+        int exit;
+        try {
+            exit = proc.waitFor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while probing " + file, e);
+        }
+        if (exit != 0 || output.isBlank()) {
+            throw new IOException("ffprobe failed for " + file + ". Exit=" + exit + ", stderr=" + error);
+        }
+
+        JsonObject json = JsonParser.parseString(output).getAsJsonObject();
+        double duration = 0;
+        if (json.has("format") && json.getAsJsonObject("format").has("duration")) {
+            duration = json.getAsJsonObject("format").get("duration").getAsDouble();
+        }
+        boolean audio = false, video = false;
+        if (json.has("streams")) {
+            for (JsonElement stream : json.getAsJsonArray("streams")) {
+                String type = stream.getAsJsonObject().get("codec_type").getAsString();
+                if (type.equals("audio")) audio = true;
+                else if (type.equals("video")) video = true;
+            }
+        }
+        return new Info(duration, audio, video, "ffprobe");
+    }
+
+    // --- cache ---------------------------------------------------------------
+
+    private static synchronized Map<String, Info> cache() {
+        if (cache == null) {
+            cache = new ConcurrentHashMap<>();
+            if (CACHE_FILE.exists()) {
+                try (Reader reader = new FileReader(CACHE_FILE)) {
+                    Map<String, Info> stored = GSON.fromJson(reader, CACHE_TYPE);
+                    if (stored != null) cache.putAll(stored);
+                } catch (Exception e) {
+                    System.err.println("⚠ Ignoring unreadable media probe cache: " + e.getMessage());
+                }
+            }
+        }
+        return cache;
+    }
+
+    private static synchronized void saveCache() {
+        try {
+            CACHE_FILE.getParentFile().mkdirs();
+            File tmp = new File(CACHE_FILE.getPath() + "." + ProcessHandle.current().pid() + ".tmp");
+            try (FileWriter writer = new FileWriter(tmp)) {
+                GSON.toJson(new LinkedHashMap<>(cache), writer);
+            }
+            Files.move(tmp.toPath(), CACHE_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("⚠ Failed to save media probe cache: " + e.getMessage());
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.io.FileOutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -123,11 +125,23 @@ public class PixabayImageDownloader {
             String url = bestImageUrl(img);
             if (url == null) continue;
 
-            File out = new File(workDir, "bg" + (result.size() + 1) + ".jpg");
+            // Named after the Pixabay id: concurrent searches never overwrite each other's
+            // files, and a photo picked again is not downloaded again
+            String id = img.has("id") && !img.get("id").isJsonNull() ? img.get("id").getAsString()
+                    : Integer.toHexString(url.hashCode());
+            File out = new File(workDir, "pixabay_" + id + ".jpg");
+            if (out.exists() && out.length() > 0) {
+                System.out.println("♻️ Reusing downloaded image: " + out.getName());
+                result.add(out);
+                continue;
+            }
+            File tmp = new File(workDir, out.getName() + "." + ProcessHandle.current().pid()
+                    + "." + Thread.currentThread().getId() + ".part");
             try (BufferedInputStream in = new BufferedInputStream(new URL(url).openStream());
-                 FileOutputStream fos = new FileOutputStream(out)) {
+                 FileOutputStream fos = new FileOutputStream(tmp)) {
                 in.transferTo(fos);
             }
+            Files.move(tmp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
             System.out.println("✅ Downloaded acceptable image: " + out.getName() + " (tags: " + img.get("tags").getAsString() + ")");
             result.add(out);
         }
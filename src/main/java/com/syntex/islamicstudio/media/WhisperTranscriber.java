@@ -7,7 +7,6 @@ import java.util.List;
 import java.util.Optional;
 
 import com.openai.client.OpenAIClient;
-import com.openai.client.okhttp.OpenAIOkHttpClient;
 import com.openai.models.audio.AudioModel;
 import com.openai.models.audio.AudioResponseFormat;
 import com.openai.models.audio.transcriptions.TranscriptionCreateParams;
@@ -15,6 +14,7 @@ import com.openai.models.audio.transcriptions.TranscriptionCreateResponse;
 import com.openai.models.audio.transcriptions.TranscriptionSegment;
 import com.openai.models.audio.transcriptions.TranscriptionVerbose;
 import com.syntex.islamicstudio.media.quran.model.Word;
+import com.syntex.islamicstudio.util.OpenAiClients;
 
 /**
  * Wrapper around OpenAI Whisper API for transcription.
@@ -28,7 +28,7 @@ public class WhisperTranscriber {
     private final OpenAIClient client;
 
     public WhisperTranscriber() {
-        this.client = OpenAIOkHttpClient.fromEnv();
+        this.client = OpenAiClients.shared();
     }
 
     /**
@@ -0,0 +1,260 @@
+package com.syntex.islamicstudio.media.quran;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.VideoProfile;
+import com.syntex.islamicstudio.media.quran.model.Ayah;
+import com.syntex.islamicstudio.util.FontRegistry;
+
+/**
+ * Builds an ASS (Advanced SubStation Alpha) script with one card per cue, for
+ * burning in with ffmpeg's {@code ass} filter instead of compositing rasterized
+ * card sprites.
+ *
+ * Styles are derived from the profile's frame size the same way the Java2D cards
+ * are (font sizes relative to the height, 100px side margins, a 3px shadow), and
+ * {@code PlayResX/Y} is the profile's full size, so libass scales the script to
+ * previews by itself. The Arabic style uses the bundled Qur'an font, embedded in
+ * the script's [Fonts] section and also extracted to {@link #fontsDir()} for
+ * builds of ffmpeg that do not load embedded fonts.
+ *
+ * In karaoke mode the Arabic words carry {@code \k} tags: each one switches from
+ * white to the highlight colour when it is first recited, with no extra images.
+ *
+ * A script can also be written for one window of the timeline only, holding just the
+ * cards on screen during it and timed from its start, for encoding that part on its own.
+ */
+public class AssScriptWriter {
+
+    /** Font used for the Arabic text; bundled in resources. */
+    public static final String ARABIC_FONT_RESOURCE = FontRegistry.AL_QALAM;
+
+    private static final File FONTS_DIR = new File("output/cache/fonts");
+    private static final String LATIN_FONT = "Serif";
+    private static final String MONO_FONT = "Monospace";
+
+    private final int width;
+    private final int height;
+    private final int titleSize;
+    private final int arabicSize;
+    private final int englishSize;
+    private final int footnoteSize;
+    private final int rawSize;
+    private final boolean karaoke;
+    private final List<Card> cards = new ArrayList<>();
+
+    private record Card(double start, double end, Ayah ayah, String raw, double[] wordStarts) {}
+
+    public AssScriptWriter(VideoProfile geometry, boolean karaoke) {
+        this.karaoke = karaoke;
+        this.width = geometry.width;
+        this.height = geometry.height;
+        this.titleSize = height / 30;
+        this.arabicSize = height / 20;
+        this.englishSize = height / 35;
+        this.footnoteSize = height / 45;
+        this.rawSize = height / 50;
+    }
+
+    /**
+     * Adds the card for {@code ayah}, shown from {@code start} to {@code end} (seconds on the
+     * video timeline). {@code raw} is the debug line, or null. In karaoke mode
+     * {@code wordStarts} holds when each of {@code ayah.words} is first recited.
+     */
+    public void card(double start, double end, Ayah ayah, String raw, double[] wordStarts) {
+        cards.add(new Card(start, end, ayah, raw, wordStarts));
+    }
+
+    /** Dialogue lines for {@code card}, with its times moved {@code shift} seconds earlier. */
+    private void events(StringBuilder events, Card card, double shift) {
+        Ayah ayah = card.ayah;
+        double start = card.start - shift;
+        double end = card.end - shift;
+        // Title, Arabic and translation flow as one block, like the stacked Java2D layout;
+        // the small-font blank lines approximate its spacing between the three parts
+        StringBuilder text = new StringBuilder();
+        text.append("{\\rTitle}").append(escape("Surah " + ayah.surahName));
+        text.append(gap(titleSize * 3 - titleSize - arabicSize));
+        text.append("{\\rArabic}");
+        if (karaoke && card.wordStarts != null) text.append(karaokeText(start, end, ayah, card.wordStarts, shift));
+        else text.append(escape(ayah.arabic));
+        if (ayah.translation != null && !ayah.translation.isBlank()) {
+            text.append(gap(arabicSize * 2 - englishSize));
+            text.append("{\\rEnglish}").append(escape(ayah.translation));
+        }
+        dialogue(events, 0, start, end, "Title", text);
+
+        if (ayah.footnotes != null && !ayah.footnotes.isEmpty()) {
+            dialogue(events, 0, start, end, "Footnote", new StringBuilder(escape(String.join("  ", ayah.footnotes))));
+        }
+        if (card.raw != null) {
+            dialogue(events, 1, start, end, "Raw", new StringBuilder(escape(card.raw)));
+        }
+    }
+
+    /** Writes the script; the embedded font makes it self-contained. */
+    public File write(File file) throws IOException {
+        return write(file, 0, Double.MAX_VALUE);
+    }
+
+    /**
+     * Writes a script with only the cards on screen between {@code from} and {@code to},
+     * timed relative to {@code from}. A card already showing at {@code from} starts at 0,
+     * with the words recited before it already highlighted.
+     */
+    public File write(File file, double from, double to) throws IOException {
+        StringBuilder events = new StringBuilder();
+        for (Card card : cards) {
+            if (card.end > from && card.start < to) events(events, card, from);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("[Script Info]\n");
+        sb.append("ScriptType: v4.00+\n");
+        sb.append("PlayResX: ").append(width).append('\n');
+        sb.append("PlayResY: ").append(height).append('\n');
+        sb.append("WrapStyle: 1\n");
+        sb.append("ScaledBorderAndShadow: yes\n");
+        sb.append("YCbCr Matrix: TV.709\n\n");
+
+        sb.append("[V4+ Styles]\n");
+        sb.append("Format: Name, Fontname, Fontsize, PrimaryColour, SecondaryColour, OutlineColour, BackColour, "
+                + "Bold, Italic, Underline, StrikeOut, ScaleX, ScaleY, Spacing, Angle, BorderStyle, Outline, "
+                + "Shadow, Alignment, MarginL, MarginR, MarginV, Encoding\n");
+        // Baselines in the Java2D layout: title at h/10, footnotes at h-200, raw line at h-60
+        // Karaoke: words not yet recited use the secondary colour (white), recited ones the primary (gold)
+        sb.append(style("Title", LATIN_FONT, titleSize, "&H0000FFFF", "&H000000FF", true, false, height / 10 - titleSize));
+        sb.append(style("Arabic", arabicFamily(), arabicSize, karaoke ? "&H0000D7FF" : "&H00FFFFFF", "&H00FFFFFF",
+                true, false, 0));
+        sb.append(style("English", LATIN_FONT, englishSize, "&H00C0C0C0", "&H000000FF", false, false, 0));
+        sb.append(style("Footnote", LATIN_FONT, footnoteSize, "&H00808080", "&H000000FF", false, true, height - 200 - footnoteSize));
+        sb.append(style("Raw", MONO_FONT, rawSize, "&H00FFFF00", "&H000000FF", false, false, height - 60 - rawSize));
+        sb.append('\n');
+
+        sb.append("[Fonts]\n");
+        sb.append("fontname: ").append(new File(ARABIC_FONT_RESOURCE).getName().replace(' ', '_')).append('\n');
+        sb.append(uuencode(arabicFontBytes())).append('\n');
+
+        sb.append("[Events]\n");
+        sb.append("Format: Layer, Start, End, Style, Name, MarginL, MarginR, MarginV, Effect, Text\n");
+        sb.append(events);
+
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tmp = new File(file.getPath() + "." + ProcessHandle.current().pid() + ".tmp");
+        Files.writeString(tmp.toPath(), sb.toString(), StandardCharsets.UTF_8);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    /** Directory holding the bundled fonts as files, for the {@code fontsdir} option of the ass filter. */
+    public static synchronized File fontsDir() throws IOException {
+        File font = new File(FONTS_DIR, new File(ARABIC_FONT_RESOURCE).getName());
+        if (!font.exists()) {
+            FONTS_DIR.mkdirs();
+            Files.write(font.toPath(), arabicFontBytes());
+        }
+        return FONTS_DIR;
+    }
+
+    private String style(String name, String font, int size, String primary, String secondary,
+                         boolean bold, boolean italic, int marginV) {
+        // Top-centre alignment (8); shadow is black at the Java2D cards' 180/255 opacity
+        return String.format(Locale.ROOT, "Style: %s,%s,%d,%s,%s,&H00000000,&H4B000000,%d,%d,0,0,100,100,0,0,1,0,3,8,100,100,%d,1%n",
+                name, font, size, primary, secondary, bold ? -1 : 0, italic ? -1 : 0, marginV);
+    }
+
+    /**
+     * The Arabic words with a {@code \k} tag each, lasting until the next word starts; a
+     * leading empty syllable covers the time before the first word. Durations come from
+     * rounded absolute times, so rounding never drifts along the ayah. {@code start} and
+     * {@code end} are already moved {@code shift} seconds earlier; the word starts are not.
+     */
+    private static String karaokeText(double start, double end, Ayah ayah, double[] wordStarts, double shift) {
+        StringBuilder sb = new StringBuilder();
+        long cueStart = centis(start);
+        long previous = cueStart;
+        int n = Math.min(ayah.words.size(), wordStarts.length);
+        for (int k = 0; k < n; k++) {
+            long wordStart = Math.max(previous, centis(wordStarts[k] - shift));
+            if (k == 0 && wordStart > cueStart) sb.append("{\\k").append(wordStart - cueStart).append('}');
+            long next = k + 1 < n ? Math.max(wordStart, centis(wordStarts[k + 1] - shift)) : Math.max(wordStart, centis(end));
+            sb.append("{\\k").append(next - wordStart).append('}').append(escape(ayah.words.get(k)));
+            if (k + 1 < n) sb.append(' ');
+            previous = wordStart;
+        }
+        return sb.toString();
+    }
+
+    private static long centis(double seconds) {
+        return Math.round(Math.max(0, seconds) * 100);
+    }
+
+    private static void dialogue(StringBuilder events, int layer, double start, double end, String style, CharSequence text) {
+        events.append("Dialogue: ").append(layer).append(',')
+                .append(time(start)).append(',').append(time(end)).append(',')
+                .append(style).append(",,0,0,0,,").append(text).append('\n');
+    }
+
+    /** A blank line of roughly {@code pixels} height. */
+    private static String gap(int pixels) {
+        return "\\N{\\fs" + Math.max(1, Math.round(pixels / 1.2f)) + "}\\h\\N";
+    }
+
+    /** H:MM:SS.cc, rounded to the centisecond. */
+    static String time(double seconds) {
+        long cs = centis(seconds);
+        return String.format(Locale.ROOT, "%d:%02d:%02d.%02d", cs / 360000, cs / 6000 % 60, cs / 100 % 60, cs % 100);
+    }
+
+    /** Keeps text from being read as override blocks or line-break escapes. */
+    static String escape(String text) {
+        if (text == null) return "";
+        return text.replace("\\", "\\\u2060")
+                .replace("{", "\\{").replace("}", "\\}")
+                .replace("\r", "").replace("\n", "\\N");
+    }
+
+    /**
+     * ASS font embedding: each 3 bytes become 4 characters of 6 bits + 33, a trailing
+     * 1 or 2 bytes become 2 or 3 characters, in lines of 80.
+     */
+    static String uuencode(byte[] data) {
+        StringBuilder out = new StringBuilder(data.length * 4 / 3 + data.length / 60 + 4);
+        int column = 0;
+        for (int i = 0; i < data.length; i += 3) {
+            int n = Math.min(3, data.length - i);
+            int b0 = data[i] & 0xFF;
+            int b1 = n > 1 ? data[i + 1] & 0xFF : 0;
+            int b2 = n > 2 ? data[i + 2] & 0xFF : 0;
+            int[] c = {b0 >> 2, ((b0 & 0x3) << 4) | (b1 >> 4), ((b1 & 0xF) << 2) | (b2 >> 6), b2 & 0x3F};
+            for (int k = 0; k < n + 1; k++) {
+                out.append((char) (c[k] + 33));
+                if (++column == 80) {
+                    out.append('\n');
+                    column = 0;
+                }
+            }
+        }
+        if (column > 0) out.append('\n');
+        return out.toString();
+    }
+
+    private static String arabicFamily() {
+        return FontRegistry.bundled(ARABIC_FONT_RESOURCE).getFamily();
+    }
+
+    private static byte[] arabicFontBytes() throws IOException {
+        try (InputStream in = AssScriptWriter.class.getResourceAsStream(ARABIC_FONT_RESOURCE)) {
+            if (in == null) throw new IOException("Font not found in resources: " + ARABIC_FONT_RESOURCE);
+            return in.readAllBytes();
+        }
+    }
+}
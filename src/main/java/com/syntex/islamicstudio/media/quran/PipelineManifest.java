@@ -0,0 +1,148 @@
+package com.syntex.islamicstudio.media.quran;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.syntex.islamicstudio.util.FileHashes;
+
+/**
+ * Checkpoint manifest for {@link QuranRecitationVideoMaker#generateVideo}, stored
+ * as manifest.json in the work dir.
+ *
+ * Each stage records the hash of its inputs and the files it produced. A
+ * rerun skips a stage when the recorded hash matches and all outputs still
+ * exist. Stage keys are chained from upstream keys ({@link #chain}), so
+ * recomputing a stage with different inputs invalidates everything after it.
+ */
+public class PipelineManifest {
+
+    public enum Stage {
+        TRANSCRIBE, DETECT, ALIGN, SUGGEST, DOWNLOAD, RENDER, ENCODE
+    }
+
+    /** Gson that stores {@link File}s as plain paths (File's fields are not reflectable). */
+    static final Gson GSON = new GsonBuilder()
+            .setPrettyPrinting()
+            .registerTypeHierarchyAdapter(File.class, new TypeAdapter<File>() {
+                @Override
+                public void write(JsonWriter out, File value) throws IOException {
+                    if (value == null) out.nullValue();
+                    else out.value(value.getPath());
+                }
+
+                @Override
+                public File read(JsonReader in) throws IOException {
+                    if (in.peek() == com.google.gson.stream.JsonToken.NULL) {
+                        in.nextNull();
+                        return null;
+                    }
+                    return new File(in.nextString());
+                }
+            })
+            .create();
+
+    private static final String FILE_NAME = "manifest.json";
+
+    private static class StageRecord {
+        String inputHash;
+        List<String> outputs = new ArrayList<>();
+        long completedAt;
+    }
+
+    private final transient File workDir;
+    private Map<Stage, StageRecord> stages = new LinkedHashMap<>();
+
+    private PipelineManifest(File workDir) {
+        this.workDir = workDir;
+    }
+
+    public static PipelineManifest load(File workDir) {
+        PipelineManifest manifest = new PipelineManifest(workDir);
+        File file = new File(workDir, FILE_NAME);
+        if (!file.exists()) return manifest;
+        try (Reader reader = new FileReader(file)) {
+            PipelineManifest stored = GSON.fromJson(reader, PipelineManifest.class);
+            if (stored != null && stored.stages != null) manifest.stages = stored.stages;
+        } catch (Exception e) {
+            System.err.println("⚠ Ignoring unreadable checkpoint manifest: " + e.getMessage());
+        }
+        return manifest;
+    }
+
+    /** Derives a stage key from upstream keys and the stage's own settings. */
+    public static String chain(Object... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (Object part : parts) sb.append(part).append('|');
+        return FileHashes.sha256(sb.toString());
+    }
+
+    /** True if {@code stage} already ran with these inputs and its outputs are still on disk. */
+    public synchronized boolean isComplete(Stage stage, String inputHash) {
+        StageRecord record = stages.get(stage);
+        if (record == null || !inputHash.equals(record.inputHash)) return false;
+        for (String path : record.outputs) {
+            if (!new File(path).exists()) return false;
+        }
+        return true;
+    }
+
+    /** Outputs recorded for a completed stage. */
+    public synchronized List<File> outputs(Stage stage) {
+        List<File> files = new ArrayList<>();
+        StageRecord record = stages.get(stage);
+        if (record != null) {
+            for (String path : record.outputs) files.add(new File(path));
+        }
+        return files;
+    }
+
+    public synchronized void complete(Stage stage, String inputHash, List<File> outputs) throws IOException {
+        StageRecord record = new StageRecord();
+        record.inputHash = inputHash;
+        for (File f : outputs) record.outputs.add(f.getPath());
+        record.completedAt = System.currentTimeMillis();
+        stages.put(stage, record);
+        save();
+    }
+
+    public void complete(Stage stage, String inputHash, File... outputs) throws IOException {
+        complete(stage, inputHash, List.of(outputs));
+    }
+
+    private void save() throws IOException {
+        workDir.mkdirs();
+        File file = new File(workDir, FILE_NAME);
+        File tmp = new File(workDir, FILE_NAME + ".tmp");
+        try (FileWriter writer = new FileWriter(tmp)) {
+            GSON.toJson(this, writer);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static <T> T readJson(File file, Type type) throws IOException {
+        try (Reader reader = new FileReader(file)) {
+            return GSON.fromJson(reader, type);
+        }
+    }
+
+    static void writeJson(File file, Object value) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            GSON.toJson(value, writer);
+        }
+    }
+}
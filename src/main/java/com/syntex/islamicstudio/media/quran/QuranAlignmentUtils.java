@@ -101,26 +101,20 @@ public class QuranAlignmentUtils {
     public static List<AyahTranscript> buildAyahTranscripts(List<WordMapping> mappings) {
         List<AyahTranscript> transcripts = new ArrayList<>();
         AyahTranscript current = null;
+        List<Integer> wordIndices = new ArrayList<>();
 
         for (WordMapping wm : mappings) {
             if (current == null || current.ayahNumber != wm.ayahNumber || current.surahId != wm.surahId) {
-                if (current != null && !current.words.isEmpty()) {
-                    current.start = current.words.get(0).start;
-                    current.end = current.words.get(current.words.size() - 1).end;
-                    transcripts.add(current);
-                }
+                finishTranscript(current, wordIndices, transcripts);
                 current = new AyahTranscript();
                 current.surahId = wm.surahId;
                 current.ayahNumber = wm.ayahNumber;
+                wordIndices.clear();
             }
             current.words.add(wm.whisper);
+            wordIndices.add(wm.ayahWordIndex);
         }
-
-        if (current != null && !current.words.isEmpty()) {
-            current.start = current.words.get(0).start;
-            current.end = current.words.get(current.words.size() - 1).end;
-            transcripts.add(current);
-        }
+        finishTranscript(current, wordIndices, transcripts);
 
         // normalize so first transcript starts at 0
         if (!transcripts.isEmpty()) {
@@ -135,6 +129,15 @@ public class QuranAlignmentUtils {
         return transcripts;
     }
 
+    /** Sets the times and word alignment of {@code current} and adds it, if it has any words. */
+    private static void finishTranscript(AyahTranscript current, List<Integer> wordIndices, List<AyahTranscript> out) {
+        if (current == null || current.words.isEmpty()) return;
+        current.start = current.words.get(0).start;
+        current.end = current.words.get(current.words.size() - 1).end;
+        current.alignment = wordIndices.stream().mapToInt(Integer::intValue).toArray();
+        out.add(current);
+    }
+
     // -----------------------------
     // AYAH MATCHING (FIXED)
     // -----------------------------
@@ -147,38 +150,17 @@ public class QuranAlignmentUtils {
         SurahMatch best = new SurahMatch();
         best.score = -1.0;
 
-        PreparedStatement psSurah = conn.prepareStatement("SELECT id FROM surah");
-        ResultSet rsSurah = psSurah.executeQuery();
+        for (QuranCorpus.Window window : QuranCorpus.windows(conn, 15)) {
+            String chunk = window.text();
 
-        while (rsSurah.next()) {
-            int surahId = rsSurah.getInt("id");
+            int dist = levenshtein(normTranscript, chunk);
+            int maxLen = Math.max(normTranscript.length(), chunk.length());
+            double similarity = 1.0 - (double) dist / maxLen;
 
-            PreparedStatement ps = conn.prepareStatement(
-                    "SELECT a.ayah_number, t.text FROM ayah a " +
-                            "JOIN ayah_text t ON t.ayah_id=a.id AND t.source_id=1 " +
-                            "WHERE a.surah_id=? ORDER BY a.ayah_number");
-            ps.setInt(1, surahId);
-            ResultSet rs = ps.executeQuery();
-
-            List<String> ayahTexts = new ArrayList<>();
-            while (rs.next()) {
-                ayahTexts.add(normalizeArabic(rs.getString("text")));
-            }
-
-            int windowSize = 15;
-            for (int start = 0; start < ayahTexts.size(); start++) {
-                int end = Math.min(start + windowSize, ayahTexts.size());
-                String chunk = String.join(" ", ayahTexts.subList(start, end));
-
-                int dist = levenshtein(normTranscript, chunk);
-                int maxLen = Math.max(normTranscript.length(), chunk.length());
-                double similarity = 1.0 - (double) dist / maxLen;
-
-                if (similarity > best.score) {
-                    best.surahId = surahId;
-                    best.startAyah = start + 1;
-                    best.score = similarity;
-                }
+            if (similarity > best.score) {
+                best.surahId = window.surahId();
+                best.startAyah = window.startAyah();
+                best.score = similarity;
             }
         }
         return best;
@@ -197,15 +179,15 @@ public class QuranAlignmentUtils {
             ps.setInt(1, surahId);
             ps.setInt(2, lastAyah);
             ps.setInt(3, lastAyah + 2); // check current, next, +1 skip
-            ResultSet rs = ps.executeQuery();
-
-            while (rs.next()) {
-                int ayahNum = rs.getInt("ayah_number");
-                String text = rs.getString("text");
-                double sim = similarity(transcriptChunk, text);
-                if (sim > bestScore) {
-                    bestScore = sim;
-                    bestAyah = ayahNum;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int ayahNum = rs.getInt("ayah_number");
+                    String text = rs.getString("text");
+                    double sim = similarity(transcriptChunk, text);
+                    if (sim > bestScore) {
+                        bestScore = sim;
+                        bestAyah = ayahNum;
+                    }
                 }
             }
         }
@@ -227,43 +209,47 @@ public class QuranAlignmentUtils {
         String surahName = "?";
         try (PreparedStatement ps = conn.prepareStatement("SELECT name_ar FROM surah WHERE id=?")) {
             ps.setInt(1, surahId);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) surahName = rs.getString("name_ar");
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) surahName = rs.getString("name_ar");
+            }
         }
 
-        PreparedStatement ps = conn.prepareStatement(
+        // Pooled connections outlive this call, so every statement and cursor is closed here
+        try (PreparedStatement ps = conn.prepareStatement(
                 "SELECT a.id, a.ayah_number, a.surah_id, t.text, t.bismillah, tr.translation " +
                         "FROM ayah a " +
                         "JOIN ayah_text t ON t.ayah_id=a.id AND t.source_id=1 " +
                         "JOIN ayah_translation tr ON tr.ayah_id=a.id AND tr.source_id=1 " +
                         "WHERE a.surah_id=? AND a.ayah_number>=? ORDER BY a.ayah_number");
-        ps.setInt(1, surahId);
-        ps.setInt(2, startAyah);
-        ResultSet rs = ps.executeQuery();
-
-        while (rs.next()) {
-            int ayahId = rs.getInt("id");
-            int num = rs.getInt("ayah_number");
-            String arabic = rs.getString("text");
-            String bismillah = rs.getString("bismillah");
-            String translation = rs.getString("translation");
-
-            if (bismillah != null && !bismillah.isBlank()) {
-                ayat.add(new Ayah(surahId, 0, surahName, bismillah, "", new ArrayList<>()));
-            }
-
-            List<String> footnotes = new ArrayList<>();
-            PreparedStatement psFoot = conn.prepareStatement(
-                    "SELECT marker, content FROM translation_footnote " +
-                            "WHERE ayah_translation_id IN " +
-                            "(SELECT id FROM ayah_translation WHERE ayah_id=? AND source_id=1)");
-            psFoot.setInt(1, ayahId);
-            ResultSet rsFoot = psFoot.executeQuery();
-            while (rsFoot.next()) {
-                footnotes.add("[" + rsFoot.getString("marker") + "] " + rsFoot.getString("content"));
+             PreparedStatement psFoot = conn.prepareStatement(
+                "SELECT marker, content FROM translation_footnote " +
+                        "WHERE ayah_translation_id IN " +
+                        "(SELECT id FROM ayah_translation WHERE ayah_id=? AND source_id=1)")) {
+            ps.setInt(1, surahId);
+            ps.setInt(2, startAyah);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int ayahId = rs.getInt("id");
+                    int num = rs.getInt("ayah_number");
+                    String arabic = rs.getString("text");
+                    String bismillah = rs.getString("bismillah");
+                    String translation = rs.getString("translation");
+
+                    if (bismillah != null && !bismillah.isBlank()) {
+                        ayat.add(new Ayah(surahId, 0, surahName, bismillah, "", new ArrayList<>()));
+                    }
+
+                    List<String> footnotes = new ArrayList<>();
+                    psFoot.setInt(1, ayahId);
+                    try (ResultSet rsFoot = psFoot.executeQuery()) {
+                        while (rsFoot.next()) {
+                            footnotes.add("[" + rsFoot.getString("marker") + "] " + rsFoot.getString("content"));
+                        }
+                    }
+
+                    ayat.add(new Ayah(surahId, num, surahName, arabic, translation, footnotes));
+                }
             }
-
-            ayat.add(new Ayah(surahId, num, surahName, arabic, translation, footnotes));
         }
         return ayat;
     }
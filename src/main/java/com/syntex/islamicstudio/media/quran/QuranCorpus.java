@@ -0,0 +1,76 @@
+package com.syntex.islamicstudio.media.quran;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory copy of the normalized Arabic text of every ayah, loaded with one
+ * query on first use and shared by every job in the JVM.
+ *
+ * {@link QuranAlignmentUtils#detectSurahSegment} compares the transcript against
+ * sliding windows over every surah; those windows are built once here instead
+ * of re-querying and re-normalizing the whole Qur'an for each recitation.
+ */
+public final class QuranCorpus {
+
+    /** A run of consecutive ayat of one surah, joined and normalized. */
+    public record Window(int surahId, int startAyah, String text) {
+    }
+
+    private static Map<Integer, List<String>> ayat;
+    private static final Map<Integer, List<Window>> windows = new LinkedHashMap<>();
+
+    private QuranCorpus() {
+    }
+
+    /** Normalized ayah texts per surah id, in surah then ayah order. */
+    public static synchronized Map<Integer, List<String>> normalizedAyat(Connection conn) throws SQLException {
+        if (ayat != null) return ayat;
+
+        Map<Integer, List<String>> loaded = new LinkedHashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT a.surah_id, t.text FROM ayah a "
+                        + "JOIN ayah_text t ON t.ayah_id=a.id AND t.source_id=1 "
+                        + "ORDER BY a.surah_id, a.ayah_number");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                loaded.computeIfAbsent(rs.getInt(1), k -> new ArrayList<>())
+                        .add(QuranAlignmentUtils.normalizeArabic(rs.getString(2)));
+            }
+        }
+        loaded.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        ayat = Collections.unmodifiableMap(loaded);
+        return ayat;
+    }
+
+    /** Every window of up to {@code size} ayat starting at each ayah of each surah. */
+    public static synchronized List<Window> windows(Connection conn, int size) throws SQLException {
+        List<Window> cached = windows.get(size);
+        if (cached != null) return cached;
+
+        List<Window> built = new ArrayList<>();
+        for (Map.Entry<Integer, List<String>> surah : normalizedAyat(conn).entrySet()) {
+            List<String> texts = surah.getValue();
+            for (int start = 0; start < texts.size(); start++) {
+                int end = Math.min(start + size, texts.size());
+                built.add(new Window(surah.getKey(), start + 1, String.join(" ", texts.subList(start, end))));
+            }
+        }
+        cached = Collections.unmodifiableList(built);
+        windows.put(size, cached);
+        return cached;
+    }
+
+    /** Drops the cached corpus, e.g. after re-importing the database. */
+    public static synchronized void clear() {
+        ayat = null;
+        windows.clear();
+    }
+}
@@ -3,42 +3,69 @@ package com.syntex.islamicstudio.media.quran;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.font.LineBreakMeasurer;
-import java.awt.font.TextAttribute;
+import java.awt.Shape;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileWriter;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
-import java.text.AttributedCharacterIterator;
-import java.text.AttributedString;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntPredicate;
 
-import javax.imageio.ImageIO;
-
-import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.openai.client.OpenAIClient;
-import com.openai.client.okhttp.OpenAIOkHttpClient;
 import com.openai.models.chat.completions.ChatCompletion;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
 import com.syntex.islamicstudio.db.DatabaseManager;
+import com.syntex.islamicstudio.media.AudioTrackCache;
+import com.syntex.islamicstudio.media.BackgroundCache;
+import com.syntex.islamicstudio.media.FfmpegRunner;
+import com.syntex.islamicstudio.media.HlsPlaylist;
+import com.syntex.islamicstudio.media.MediaProbe;
 import com.syntex.islamicstudio.media.PixabayDownloader;
 import com.syntex.islamicstudio.media.WhisperTranscriber;
+import com.syntex.islamicstudio.media.quran.PipelineManifest.Stage;
 import com.syntex.islamicstudio.media.quran.model.Ayah;
 import com.syntex.islamicstudio.media.quran.model.AyahTranscript;
+import com.syntex.islamicstudio.media.quran.model.CardSprite;
 import com.syntex.islamicstudio.media.quran.model.SurahMatch;
 import com.syntex.islamicstudio.media.quran.model.Word;
 import com.syntex.islamicstudio.media.quran.model.WordMapping;
+import com.syntex.islamicstudio.util.CanvasPool;
+import com.syntex.islamicstudio.util.CpuBudget;
+import com.syntex.islamicstudio.util.FileHashes;
+import com.syntex.islamicstudio.util.FontRegistry;
+import com.syntex.islamicstudio.util.OpenAiClients;
+import com.syntex.islamicstudio.util.RenderPool;
+import com.syntex.islamicstudio.util.StageExecutor;
+import com.syntex.islamicstudio.util.TextLayoutCache;
+import com.syntex.islamicstudio.util.image.ImageFormat;
 
 public class QuranRecitationVideoMaker {
 
-    private static final Gson gson = new Gson();
+    private static final double CARD_DIM_OPACITY = 180 / 255.0;
+    private static final Color KARAOKE_HIGHLIGHT = new Color(255, 215, 0);
+    private static final Type WORDS_TYPE = new TypeToken<List<Word>>() {}.getType();
+    private static final Type TRANSCRIPTS_TYPE = new TypeToken<List<AyahTranscript>>() {}.getType();
+    private static final Type SPRITES_TYPE = new TypeToken<Map<String, List<CardSprite>>>() {}.getType();
+    /** Tries per HLS segment before it is left for a rerun. */
+    private static final int HLS_SEGMENT_ATTEMPTS = 2;
+    /** Length of the crossfade between two background clips. */
+    private static final double BG_FADE_SECONDS = 2;
     private final OpenAIClient openAi;
     private final boolean debug;
 
@@ -51,286 +78,1386 @@ public class QuranRecitationVideoMaker {
 
         public final int width;
         public final int height;
+        public final int fps;
+        public final String pixelFormat;
 
         VideoProfile(int w, int h) {
+            this(w, h, 30, "yuv420p");
+        }
+
+        VideoProfile(int w, int h, int fps, String pixelFormat) {
             this.width = w;
             this.height = h;
+            this.fps = fps;
+            this.pixelFormat = pixelFormat;
+        }
+    }
+
+    /** What to keep in the work dir after a successful run. */
+    public enum RetentionPolicy {
+        /** Keep every intermediate. */
+        ALL,
+        /** Keep checkpoints (transcript, match, suggestion, downloads); drop rendered cards. */
+        CHECKPOINTS,
+        /** Delete the whole work dir. */
+        NONE
+    }
+
+    /** Background used by preview renders instead of the downloaded clips. */
+    public enum PreviewBackground {
+        /** Flat dark colour; skips the theme suggestion and clip downloads entirely. */
+        SOLID,
+        /** First frame of the first downloaded clip, held for the whole preview. */
+        FIRST_FRAME
+    }
+
+    /** How the text cards get into the video. */
+    public enum CardBackend {
+        /** Java2D-rendered card images composited with ffmpeg's overlay filter. */
+        SPRITES,
+        /** An ASS subtitle script burned in by libass during the encode; no Java rasterization. */
+        ASS
+    }
+
+    /**
+     * Draft render settings: frames scaled by {@code scale}, an ultrafast encode, a static
+     * background, and optionally only an ayah range ({@code fromAyah..toAyah}) or a time range
+     * in seconds ({@code fromSeconds..toSeconds}); unused bounds are negative. Cue times come
+     * from the same transcript as the full render, so a preview shows exactly what the final
+     * video shows at that moment.
+     */
+    public record PreviewOptions(double scale, PreviewBackground background,
+                                 int fromAyah, int toAyah, double fromSeconds, double toSeconds) {
+
+        public PreviewOptions {
+            if (scale <= 0 || scale > 1) throw new IllegalArgumentException("Preview scale must be in (0, 1]");
+            if (background == null) background = PreviewBackground.SOLID;
+        }
+
+        public static PreviewOptions whole(double scale, PreviewBackground background) {
+            return new PreviewOptions(scale, background, -1, -1, -1, -1);
+        }
+
+        boolean hasAyahRange() {
+            return fromAyah >= 0 || toAyah >= 0;
+        }
+
+        boolean hasTimeRange() {
+            return fromSeconds >= 0 || toSeconds >= 0;
         }
     }
 
-    private VideoProfile profile = VideoProfile.DESKTOP;
+    private List<VideoProfile> profiles = List.of(VideoProfile.DESKTOP);
+    private RetentionPolicy retention = RetentionPolicy.CHECKPOINTS;
+    private PreviewOptions preview;
+    private CardBackend backend = CardBackend.SPRITES;
+    private boolean karaoke;
 
     public QuranRecitationVideoMaker() { this(false); }
     public QuranRecitationVideoMaker(boolean debug) {
-        this.openAi = OpenAIOkHttpClient.fromEnv();
+        this.openAi = OpenAiClients.shared();
         this.debug = debug;
     }
 
     public void setProfile(VideoProfile profile) {
-        this.profile = profile;
+        setProfiles(List.of(profile));
+    }
+
+    public void setRetention(RetentionPolicy retention) {
+        this.retention = retention;
+    }
+
+    /** Switches to draft renders written next to the output as {@code <name>_preview.mp4}; null for a full render. */
+    public void setPreview(PreviewOptions preview) {
+        this.preview = preview;
+    }
+
+    public void setBackend(CardBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Highlights each Arabic word as it is recited: small per-word sprites over the static
+     * card ({@link CardBackend#SPRITES}) or {@code \k} karaoke tags ({@link CardBackend#ASS}).
+     */
+    public void setKaraoke(boolean karaoke) {
+        this.karaoke = karaoke;
+    }
+
+    /** Renders every profile from one pipeline run; duplicates are ignored. */
+    public void setProfiles(List<VideoProfile> profiles) {
+        if (profiles == null || profiles.isEmpty()) throw new IllegalArgumentException("At least one video profile is required");
+        this.profiles = List.copyOf(new LinkedHashSet<>(profiles));
+    }
+
+    /**
+     * Runs the whole pipeline and returns the written videos. With a single profile the
+     * output is {@code outputVideo}; with several, each profile gets
+     * {@code <name>_<profile>.mp4} next to it.
+     *
+     * Stages form a dependency graph on the {@link StageExecutor}: once the surah is
+     * detected, alignment runs alongside the background suggestion, the clip downloads
+     * and card rendering (cards only need the ayat, not their timings), and the encode
+     * waits for all of them. Each stage is checkpointed in the work dir's
+     * {@link PipelineManifest}; a rerun skips every stage whose inputs are unchanged.
+     * On success the work dir is trimmed according to the {@link RetentionPolicy}; on
+     * failure it is left untouched so the next run can resume.
+     *
+     * In preview mode ({@link #setPreview}) the transcription and alignment checkpoints are
+     * shared with full renders, but cards and video are always re-rendered and never recorded.
+     */
+    public List<File> generateVideo(File audioFile, File outputVideo,
+                                    boolean noBgAudio, int maxVerses, double bgVolume) throws Exception {
+        Prepared p = prepare(audioFile, outputVideo, maxVerses, new EncodeSettings(noBgAudio, bgVolume));
+        if (preview != null) {
+            return generatePreview(audioFile, withSuffix(p.outputVideo, "preview"), p.workDir,
+                    new File(p.framesDir, "preview"), p.downloads, p.surahAyat, p.transcripts);
+        }
+
+        // 7. Encode
+        List<File> outputs = outputsOf(p.renders);
+        String encodeKey = encodeKey(p.renderKey, p.alignKey, p.downloadKey, p.renders, noBgAudio, bgVolume);
+        if (p.manifest.isComplete(Stage.ENCODE, encodeKey)) {
+            System.out.println("⏭ Outputs are up to date, skipping encode");
+        } else {
+            runOptimizedFfmpeg(p.renders, audioFile, p.transcripts, noBgAudio, bgVolume, null, null);
+            p.manifest.complete(Stage.ENCODE, encodeKey, outputs);
+        }
+
+        applyRetention(p.workDir, p.framesDir, outputs);
+        return outputs;
+    }
+
+    /** Mixing settings of a full encode; part of its checkpoint key. */
+    private record EncodeSettings(boolean noBgAudio, double bgVolume) {
+    }
+
+    private static String encodeKey(String renderKey, String alignKey, String downloadKey, List<ProfileRender> renders,
+                                    boolean noBgAudio, double bgVolume) {
+        List<String> outputPaths = outputsOf(renders).stream().map(File::getAbsolutePath).toList();
+        return PipelineManifest.chain(renderKey, alignKey, downloadKey, Stage.ENCODE, noBgAudio, bgVolume, outputPaths);
+    }
+
+    private static List<File> outputsOf(List<ProfileRender> renders) {
+        List<File> outputs = new ArrayList<>();
+        for (ProfileRender render : renders) outputs.addAll(render.outputs);
+        return outputs;
+    }
+
+    /**
+     * Runs every stage up to the encode (see {@link #prepare}) and splits the timeline into
+     * windows of roughly {@code targetSeconds}, cut only where an ayah cue starts. Each
+     * window is {@code {from, to}} in seconds on the final video's timeline.
+     */
+    public List<double[]> planSegments(File audioFile, int maxVerses, double targetSeconds) throws Exception {
+        return segments(prepare(audioFile, null, maxVerses, null), audioFile, targetSeconds);
+    }
+
+    private static List<double[]> segments(Prepared p, File audioFile, double targetSeconds) throws Exception {
+        double audioDuration = MediaProbe.duration(audioFile);
+        double timeOffset = p.transcripts.isEmpty() ? 0.0 : p.transcripts.get(0).start;
+
+        List<double[]> segments = new ArrayList<>();
+        double from = 0;
+        for (int i = 1; i < p.transcripts.size(); i++) {
+            double cut = cueStart(p.transcripts, i, timeOffset);
+            if (cut - from >= targetSeconds && audioDuration - cut >= targetSeconds / 2) {
+                segments.add(new double[] {from, cut});
+                from = cut;
+            }
+        }
+        segments.add(new double[] {from, audioDuration});
+        return segments;
+    }
+
+    /**
+     * Encodes the {@code [from, to)} slice of the final video at full quality. Every stage
+     * before the encode is resumed from the work dir's checkpoints, so segments of one
+     * recitation can be encoded by several processes at once once one of them has run
+     * {@link #planSegments}. Nothing is recorded in the manifest and no retention runs;
+     * call {@link #cleanUp} when all segments are merged.
+     */
+    public List<File> renderSegment(File audioFile, File outputVideo, double from, double to,
+                                    boolean noBgAudio, int maxVerses, double bgVolume) throws Exception {
+        Prepared p = prepare(audioFile, outputVideo, maxVerses, null);
+        runOptimizedFfmpeg(p.renders, audioFile, p.transcripts, noBgAudio, bgVolume, null, new Slice(from, to, false));
+        return outputsOf(p.renders);
+    }
+
+    /**
+     * Writes the video as HLS instead of MP4: {@code <name>_hls/playlist.m3u8} next to each
+     * output, over fragmented MP4 segments of roughly {@code segmentSeconds} cut where an
+     * ayah starts. The playlist is republished after every segment, so the start can be
+     * watched or reviewed while the rest encodes. A failing segment is retried once and
+     * then left out; a rerun with the same settings encodes only the missing segments.
+     * Returns the playlists.
+     */
+    public List<File> generateHls(File audioFile, File outputVideo, boolean noBgAudio, int maxVerses,
+                                  double bgVolume, double segmentSeconds) throws Exception {
+        if (preview != null) throw new IllegalStateException("HLS output is not available in preview mode");
+        Prepared p = prepare(audioFile, outputVideo, maxVerses, null);
+        List<double[]> windows = segments(p, audioFile, segmentSeconds);
+        double[] durations = windows.stream().mapToDouble(w -> w[1] - w[0]).toArray();
+        String hlsKey = PipelineManifest.chain(p.renderKey, p.alignKey, p.downloadKey, "HLS",
+                noBgAudio, bgVolume, segmentSeconds);
+
+        // One playlist per output, in render order
+        List<File> dirs = new ArrayList<>();
+        List<HlsPlaylist> playlists = new ArrayList<>();
+        for (ProfileRender render : p.renders) {
+            for (File output : render.outputs) {
+                File dir = hlsDirFor(output);
+                resetHlsDir(dir, hlsKey);
+                dirs.add(dir);
+                playlists.add(new HlsPlaylist(new File(dir, "playlist.m3u8"), durations));
+            }
+        }
+        System.out.println("📼 HLS: " + windows.size() + " segments → " + playlists.get(0).file().getPath());
+
+        List<Integer> failed = new ArrayList<>();
+        for (int i = 0; i < windows.size(); i++) {
+            String name = String.format("seg_%03d.mp4", i);
+            if (!dirs.stream().allMatch(d -> new File(d, name).length() > 0)) {
+                Exception error = null;
+                for (int attempt = 1; attempt <= HLS_SEGMENT_ATTEMPTS; attempt++) {
+                    try {
+                        encodeHlsSegment(p, audioFile, noBgAudio, bgVolume, windows.get(i), dirs, name);
+                        error = null;
+                        break;
+                    } catch (Exception e) {
+                        error = e;
+                        System.err.println("⚠ Segment " + i + " failed (attempt " + attempt + "): " + e.getMessage());
+                    }
+                }
+                if (error != null) {
+                    failed.add(i);
+                    continue;
+                }
+            } else {
+                System.out.println("⏭ Segment " + i + " is up to date");
+            }
+            for (int k = 0; k < dirs.size(); k++) playlists.get(k).add(i, new File(dirs.get(k), name));
+            System.out.printf("📼 %.1fs of %.1fs playable%n", playlists.get(0).readySeconds(), windows.get(windows.size() - 1)[1]);
+        }
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException("HLS segments " + failed + " failed; rerun to encode just those");
+        }
+
+        List<File> outputs = new ArrayList<>();
+        for (HlsPlaylist playlist : playlists) {
+            playlist.finish();
+            outputs.add(playlist.file());
+        }
+        applyRetention(p.workDir, p.framesDir, outputs);
+        return outputs;
+    }
+
+    /** Encodes one window into {@code name} in every HLS dir, via temp files so a segment only exists once complete. */
+    private void encodeHlsSegment(Prepared p, File audioFile, boolean noBgAudio, double bgVolume,
+                                  double[] window, List<File> dirs, String name) throws Exception {
+        // The renders are private to this run, so their outputs are simply pointed at the segment files
+        List<File> parts = new ArrayList<>();
+        int o = 0;
+        for (ProfileRender render : p.renders) {
+            for (int j = 0; j < render.outputs.size(); j++, o++) {
+                File part = new File(dirs.get(o), "." + name + ".part.mp4");
+                render.outputs.set(j, part);
+                parts.add(part);
+            }
+        }
+        try {
+            runOptimizedFfmpeg(p.renders, audioFile, p.transcripts, noBgAudio, bgVolume, null,
+                    new Slice(window[0], window[1], true));
+        } catch (Exception e) {
+            parts.forEach(File::delete);
+            throw e;
+        }
+        for (int k = 0; k < parts.size(); k++) {
+            Files.move(parts.get(k).toPath(), new File(dirs.get(k), name).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /** {@code dir/name.mp4} → {@code dir/name_hls/}. */
+    private static File hlsDirFor(File output) {
+        String name = output.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(output.getAbsoluteFile().getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + "_hls");
     }
 
-    public void generateVideo(File audioFile, File outputVideo,
-                              boolean noBgAudio, int maxVerses, double bgVolume) throws Exception {
+    /** Drops segments written with different settings; keeps them when {@code key} matches. */
+    private static void resetHlsDir(File dir, String key) throws Exception {
+        dir.mkdirs();
+        File keyFile = new File(dir, ".key");
+        if (keyFile.exists() && Files.readString(keyFile.toPath()).equals(key)) return;
+        File[] stale = dir.listFiles((d, n) -> n.startsWith("seg_") || n.endsWith(".m3u8"));
+        if (stale != null) for (File f : stale) f.delete();
+        Files.writeString(keyFile.toPath(), key);
+    }
 
+    /** Applies the retention policy to a recitation's work dir, sparing {@code keep}. */
+    public void cleanUp(File audioFile, List<File> keep) {
+        File workDir = workDirFor(audioFile);
+        applyRetention(workDir, new File(workDir, "frames"), keep);
+    }
+
+    /** Work dir of a recitation; keyed by path too, so recitations that share a file name never share checkpoints. */
+    private static File workDirFor(File audioFile) {
+        String pathHash = FileHashes.sha256(audioFile.getAbsolutePath()).substring(0, 8);
+        return new File("output/temp", baseName(audioFile) + "-" + pathHash);
+    }
+
+    private static String baseName(File audioFile) {
         String baseName = audioFile.getName();
         int dot = baseName.lastIndexOf('.');
-        if (dot > 0) baseName = baseName.substring(0, dot);
+        return dot > 0 ? baseName.substring(0, dot) : baseName;
+    }
+
+    /** Everything the encode needs, produced by {@link #prepare}. */
+    private static class Prepared {
+        File workDir;
+        File framesDir;
+        File outputVideo;
+        PipelineManifest manifest;
+        List<Ayah> surahAyat;
+        List<AyahTranscript> transcripts;
+        List<File> downloads;
+        /** Null in preview mode, which plans its own renders. */
+        List<ProfileRender> renders;
+        String alignKey;
+        String downloadKey;
+        String renderKey;
+    }
 
-        File workDir = new File("output/temp", baseName);
+    /**
+     * Runs stages 1-6 as a dependency graph on the {@link StageExecutor}, resuming from
+     * checkpoints. In preview mode it stops once the transcript and downloads are ready.
+     * With {@code encode} set, cards and backgrounds are not prepared when a full encode
+     * with those settings is already checkpointed, since nothing would use them.
+     */
+    private Prepared prepare(File audioFile, File outputVideo, int maxVerses, EncodeSettings encode) throws Exception {
+        String baseName = baseName(audioFile);
+        File workDir = workDirFor(audioFile);
         File framesDir = new File(workDir, "frames");
         framesDir.mkdirs();
+        if (outputVideo == null) outputVideo = new File(workDir, baseName + ".mp4");
 
-        File transcriptFile = new File(workDir, "transcript.json");
+        Prepared prepared = new Prepared();
+        prepared.workDir = workDir;
+        prepared.framesDir = framesDir;
+        prepared.outputVideo = outputVideo;
+        PipelineManifest manifest = PipelineManifest.load(workDir);
+        prepared.manifest = manifest;
+        long t0 = System.currentTimeMillis();
 
-        List<AyahTranscript> transcripts;
-        List<Word> rawWords;
-        SurahMatch match;
+        // 1. Transcribe
+        String transcribeKey = PipelineManifest.chain(FileHashes.sha256(audioFile));
+        CompletableFuture<List<Word>> words = StageExecutor.async(
+                () -> transcribe(manifest, workDir, audioFile, transcribeKey));
 
-        if (transcriptFile.exists()) {
-            try (var reader = new java.io.FileReader(transcriptFile)) {
-                transcripts = gson.fromJson(reader, new TypeToken<List<AyahTranscript>>() {}.getType());
-            }
-            rawWords = new ArrayList<>();
-            for (AyahTranscript at : transcripts) rawWords.addAll(at.words);
+        // 2. Detect surah + starting ayah, then load its ayat
+        String detectKey = PipelineManifest.chain(transcribeKey, Stage.DETECT);
+        CompletableFuture<SurahMatch> match = StageExecutor.then(words,
+                w -> detect(manifest, workDir, w, detectKey));
+        CompletableFuture<List<Ayah>> surahAll = StageExecutor.then(match, m -> {
             try (Connection conn = DatabaseManager.getConnection()) {
-                match = QuranAlignmentUtils.detectSurahSegment(conn, rawWords);
+                return QuranAlignmentUtils.loadSurah(conn, m.surahId, m.startAyah, joinWords(words.join()));
             }
+        });
+        CompletableFuture<List<Ayah>> surahAyat = surahAll.thenApply(
+                all -> maxVerses > 0 && all.size() > maxVerses ? all.subList(0, maxVerses) : all);
+
+        // 3. Align words to ayat
+        String alignKey = PipelineManifest.chain(detectKey, Stage.ALIGN);
+        CompletableFuture<List<AyahTranscript>> transcripts = StageExecutor.then(surahAll, all -> {
+            List<AyahTranscript> aligned = align(manifest, workDir, words.join(), all, alignKey);
+            return maxVerses > 0 && aligned.size() > maxVerses ? aligned.subList(0, maxVerses) : aligned;
+        });
+
+        // 4. Suggest a background theme (needs only the surah and ayah range)
+        // 5. Download background clips
+        boolean solidPreview = preview != null && preview.background() == PreviewBackground.SOLID;
+        String suggestKey = PipelineManifest.chain(detectKey, Stage.SUGGEST, maxVerses);
+        CompletableFuture<String> suggestion = solidPreview ? CompletableFuture.completedFuture(null)
+                : StageExecutor.then(surahAyat, ayat -> suggest(manifest, workDir, match.join(), ayat, suggestKey));
+        CompletableFuture<List<File>> downloads = solidPreview ? CompletableFuture.completedFuture(List.of())
+                : StageExecutor.then(suggestion, s -> download(manifest, workDir, s));
+
+        prepared.alignKey = alignKey;
+        if (preview != null) {
+            StageExecutor.await(CompletableFuture.allOf(transcripts, downloads));
+            prepared.surahAyat = surahAyat.join();
+            prepared.transcripts = transcripts.join();
+            prepared.downloads = downloads.join();
+            return prepared;
+        }
+
+        List<ProfileRender> renders = planRenders(outputVideo, framesDir, 1.0);
+        File spritesFile = new File(workDir, "sprites.json");
+        List<String> geometryKeys = renders.stream().map(r -> r.key).toList();
+        String renderKey;
+        if (backend == CardBackend.ASS) {
+            renderKey = PipelineManifest.chain(alignKey, Stage.RENDER, maxVerses, debug, backend, karaoke, geometryKeys);
+        } else {
+            // Only the ayat the alignment found get a card, so the cards follow the alignment
+            renderKey = PipelineManifest.chain(alignKey, Stage.RENDER, maxVerses, debug, geometryKeys, karaoke);
+        }
+
+        // The encode checkpoint outlives the rendered cards (see RetentionPolicy), so check it first
+        boolean encoded = encode != null && encodeUpToDate(manifest, workDir, suggestKey, renderKey, alignKey,
+                renders, encode);
+        if (encoded) System.out.println("⏭ Outputs are up to date, skipping card rendering");
+
+        CompletableFuture<Void> backgrounds = encoded ? CompletableFuture.completedFuture(null)
+                : StageExecutor.then(downloads, clips -> {
+                    for (ProfileRender render : renders) {
+                        render.bgVideos = BackgroundCache.prepareAll(clips, render.width, render.height,
+                                render.fps, render.pixelFormat);
+                    }
+                    return null;
+                });
+
+        // 6. Render cards once alignment is done, concurrently with the background downloads:
+        // one per recited ayah, not per ayah of the rest of the surah. Debug cards show the
+        // transcript, so they are rendered per cue. The ASS backend only writes a script,
+        // which needs the cue timings.
+        CompletableFuture<Void> cards;
+        if (encoded) {
+            cards = CompletableFuture.completedFuture(null);
+        } else if (backend == CardBackend.ASS) {
+            cards = StageExecutor.then(transcripts, cues -> {
+                writeSubtitles(renders, surahAyat.join(), cues, MediaProbe.duration(audioFile), i -> true);
+                return null;
+            });
+        } else {
+            cards = StageExecutor.then(transcripts, cues -> {
+                renderCardStage(manifest, spritesFile, renderKey, renders, recitedAyat(surahAyat.join(), cues),
+                        debug ? cues : null);
+                return null;
+            });
+        }
+
+        StageExecutor.await(CompletableFuture.allOf(transcripts, backgrounds, cards));
+        System.out.println("⏱ Inputs ready in " + (System.currentTimeMillis() - t0) + " ms");
+        if (!debug && backend == CardBackend.SPRITES) {
+            for (ProfileRender render : renders) {
+                List<CardSprite> perCue = spritesForCues(render.sprites, transcripts.join());
+                render.sprites.clear();
+                render.sprites.addAll(perCue);
+            }
+        }
+        attachWordSprites(renders, transcripts.join());
+
+        prepared.surahAyat = surahAyat.join();
+        prepared.transcripts = transcripts.join();
+        prepared.downloads = downloads.join();
+        prepared.renders = renders;
+        prepared.renderKey = renderKey;
+        prepared.downloadKey = PipelineManifest.chain(Stage.DOWNLOAD, suggestion.join());
+        return prepared;
+    }
+
+    /**
+     * Whether a full encode of these renders is checkpointed. Only the suggestion checkpoint
+     * is read (for the download key); without it the encode cannot be current.
+     */
+    private static boolean encodeUpToDate(PipelineManifest manifest, File workDir, String suggestKey, String renderKey,
+                                          String alignKey, List<ProfileRender> renders,
+                                          EncodeSettings encode) throws Exception {
+        if (!manifest.isComplete(Stage.SUGGEST, suggestKey)) return false;
+        String suggestion = Files.readString(new File(workDir, "suggestion.txt").toPath());
+        String downloadKey = PipelineManifest.chain(Stage.DOWNLOAD, suggestion);
+        return manifest.isComplete(Stage.ENCODE,
+                encodeKey(renderKey, alignKey, downloadKey, renders, encode.noBgAudio(), encode.bgVolume()));
+    }
+
+    private List<Word> transcribe(PipelineManifest manifest, File workDir, File audioFile, String key) throws Exception {
+        File wordsFile = new File(workDir, "words.json");
+        List<Word> rawWords;
+        if (manifest.isComplete(Stage.TRANSCRIBE, key)) {
+            rawWords = PipelineManifest.readJson(wordsFile, WORDS_TYPE);
+            System.out.println("⏭ Reusing transcription checkpoint");
         } else {
             WhisperTranscriber whisper = new WhisperTranscriber();
             rawWords = whisper.transcribeWithTimestamps(audioFile);
             if (rawWords.isEmpty()) throw new IllegalStateException("No transcription produced!");
+            PipelineManifest.writeJson(wordsFile, rawWords);
+            manifest.complete(Stage.TRANSCRIBE, key, wordsFile);
+        }
+        return rawWords;
+    }
 
-            try (Connection conn = DatabaseManager.getConnection()) {
-                match = QuranAlignmentUtils.detectSurahSegment(conn, rawWords);
-                List<Ayah> ayat = QuranAlignmentUtils.loadSurah(conn, match.surahId, match.startAyah, joinWords(rawWords));
-                List<WordMapping> mappings = QuranAlignmentUtils.alignTranscriptFlexible(rawWords, ayat);
-                transcripts = QuranAlignmentUtils.buildAyahTranscripts(mappings);
+    private static SurahMatch detect(PipelineManifest manifest, File workDir, List<Word> rawWords, String key) throws Exception {
+        File matchFile = new File(workDir, "match.json");
+        if (manifest.isComplete(Stage.DETECT, key)) {
+            return PipelineManifest.readJson(matchFile, SurahMatch.class);
+        }
+        SurahMatch match;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            match = QuranAlignmentUtils.detectSurahSegment(conn, rawWords);
+        }
+        PipelineManifest.writeJson(matchFile, match);
+        manifest.complete(Stage.DETECT, key, matchFile);
+        return match;
+    }
+
+    private static List<AyahTranscript> align(PipelineManifest manifest, File workDir, List<Word> rawWords,
+                                              List<Ayah> surahAyat, String key) throws Exception {
+        File transcriptFile = new File(workDir, "transcript.json");
+        if (manifest.isComplete(Stage.ALIGN, key)) {
+            List<AyahTranscript> stored = PipelineManifest.readJson(transcriptFile, TRANSCRIPTS_TYPE);
+            // Checkpoints written before word alignments were kept are realigned (no API calls involved)
+            if (stored.stream().allMatch(t -> t.alignment != null)) return stored;
+        }
+        List<WordMapping> mappings = QuranAlignmentUtils.alignTranscriptFlexible(rawWords, surahAyat);
+        List<AyahTranscript> transcripts = QuranAlignmentUtils.buildAyahTranscripts(mappings);
+        PipelineManifest.writeJson(transcriptFile, transcripts);
+        manifest.complete(Stage.ALIGN, key, transcriptFile);
+        return transcripts;
+    }
+
+    private String suggest(PipelineManifest manifest, File workDir, SurahMatch match, List<Ayah> surahAyat,
+                           String key) throws Exception {
+        File suggestionFile = new File(workDir, "suggestion.txt");
+        if (manifest.isComplete(Stage.SUGGEST, key)) {
+            return Files.readString(suggestionFile.toPath());
+        }
+        String suggestion = suggestBackground(match.surahId, match.startAyah, surahAyat);
+        Files.writeString(suggestionFile.toPath(), suggestion);
+        manifest.complete(Stage.SUGGEST, key, suggestionFile);
+        return suggestion;
+    }
+
+    private static List<File> download(PipelineManifest manifest, File workDir, String suggestion) throws Exception {
+        String key = PipelineManifest.chain(Stage.DOWNLOAD, suggestion);
+        if (manifest.isComplete(Stage.DOWNLOAD, key)) {
+            List<File> downloads = manifest.outputs(Stage.DOWNLOAD);
+            System.out.println("⏭ Reusing " + downloads.size() + " downloaded backgrounds");
+            return downloads;
+        }
+        List<File> downloads = PixabayDownloader.downloadBackgroundVideos(suggestion, workDir, 3);
+        manifest.complete(Stage.DOWNLOAD, key, downloads);
+        return downloads;
+    }
+
+    /** Renders (or reuses) the cards for every render; per ayah when {@code cues} is null, else per cue. */
+    private void renderCardStage(PipelineManifest manifest, File spritesFile, String key, List<ProfileRender> renders,
+                                 List<Ayah> surahAyat, List<AyahTranscript> cues) throws Exception {
+        if (manifest.isComplete(Stage.RENDER, key)) {
+            Map<String, List<CardSprite>> stored = PipelineManifest.readJson(spritesFile, SPRITES_TYPE);
+            for (ProfileRender render : renders) {
+                render.sprites.addAll(stored.get(render.key));
+                render.wordSprites.addAll(stored.getOrDefault(render.key + "/words", List.of()));
             }
+            System.out.println("⏭ Reusing rendered cards");
+            return;
+        }
+        renderCards(renders, surahAyat, cues, i -> true);
+        Map<String, List<CardSprite>> stored = new LinkedHashMap<>();
+        List<File> spriteFiles = new ArrayList<>();
+        spriteFiles.add(spritesFile);
+        for (ProfileRender render : renders) {
+            stored.put(render.key, render.sprites);
+            for (CardSprite sprite : render.sprites) spriteFiles.add(sprite.file);
+            if (karaoke) {
+                stored.put(render.key + "/words", render.wordSprites);
+                // The words of an ayah share one image
+                render.wordSprites.stream().map(sprite -> sprite.file).distinct().forEach(spriteFiles::add);
+            }
+        }
+        PipelineManifest.writeJson(spritesFile, stored);
+        manifest.complete(Stage.RENDER, key, spriteFiles);
+    }
+
+    /** The ayat of {@code surahAyat} that at least one cue recites, in surah order. */
+    private static List<Ayah> recitedAyat(List<Ayah> surahAyat, List<AyahTranscript> transcripts) {
+        Set<Integer> recited = new LinkedHashSet<>();
+        for (AyahTranscript at : transcripts) recited.add(at.ayahNumber);
+        return surahAyat.stream().filter(a -> recited.contains(a.number)).toList();
+    }
+
+    /** Maps per-ayah cards onto the aligned cues; an ayah recited twice reuses its card. */
+    private static List<CardSprite> spritesForCues(List<CardSprite> perAyah, List<AyahTranscript> transcripts) {
+        Map<Integer, CardSprite> byAyah = new LinkedHashMap<>();
+        for (CardSprite sprite : perAyah) byAyah.put(sprite.ayahNumber, sprite);
+        List<CardSprite> perCue = new ArrayList<>();
+        for (int i = 0; i < transcripts.size(); i++) {
+            CardSprite card = byAyah.get(transcripts.get(i).ayahNumber);
+            if (card == null) continue;
+            CardSprite cue = new CardSprite();
+            cue.index = i;
+            cue.ayahNumber = card.ayahNumber;
+            cue.file = card.file;
+            cue.x = card.x;
+            cue.y = card.y;
+            cue.width = card.width;
+            cue.height = card.height;
+            perCue.add(cue);
+        }
+        return perCue;
+    }
+
+    /**
+     * Draft render: scaled-down cards for the cues inside the preview window, composited
+     * over a static background and encoded ultrafast. Bypasses the RENDER/ENCODE checkpoints.
+     */
+    private List<File> generatePreview(File audioFile, File outputVideo, File workDir, File framesDir,
+                                       List<File> downloads, List<Ayah> surahAyat,
+                                       List<AyahTranscript> transcripts) throws Exception {
+        long t0 = System.currentTimeMillis();
+        double timeOffset = transcripts.isEmpty() ? 0.0 : transcripts.get(0).start;
+        List<ProfileRender> renders = planRenders(outputVideo, framesDir, preview.scale());
+        if (preview.background() == PreviewBackground.FIRST_FRAME && !downloads.isEmpty()) {
+            for (ProfileRender render : renders) render.bgVideos = List.of(downloads.get(0));
+        }
+
+        IntPredicate include = i -> inPreview(transcripts, i, cueStart(transcripts, i, timeOffset),
+                cueEnd(transcripts, i, timeOffset, Double.MAX_VALUE));
+        if (backend == CardBackend.ASS) {
+            writeSubtitles(renders, surahAyat, transcripts, MediaProbe.duration(audioFile), include);
+        } else {
+            renderCards(renders, surahAyat, transcripts, include);
+            attachWordSprites(renders, transcripts);
+        }
+        runOptimizedFfmpeg(renders, audioFile, transcripts, true, 0, preview, null);
+
+        List<File> outputs = new ArrayList<>();
+        for (ProfileRender render : renders) outputs.addAll(render.outputs);
+        System.out.println("👀 Preview rendered in " + (System.currentTimeMillis() - t0) + " ms");
+        applyRetention(workDir, framesDir, outputs);
+        return outputs;
+    }
+
+    /** Whether cue {@code i}, shown from {@code start} to {@code end}, falls inside the preview window. */
+    private boolean inPreview(List<AyahTranscript> transcripts, int i, double start, double end) {
+        if (preview == null) return true;
+        if (preview.hasAyahRange()) {
+            int ayah = transcripts.get(i).ayahNumber;
+            return (preview.fromAyah() < 0 || ayah >= preview.fromAyah())
+                    && (preview.toAyah() < 0 || ayah <= preview.toAyah());
+        }
+        if (preview.hasTimeRange()) {
+            return (preview.toSeconds() < 0 || start < preview.toSeconds())
+                    && (preview.fromSeconds() < 0 || end > preview.fromSeconds());
+        }
+        return true;
+    }
 
-            try (FileWriter writer = new FileWriter(transcriptFile)) {
-                gson.toJson(transcripts, writer);
+    /** The [start, end) slice of the final timeline a preview covers. */
+    private double[] previewWindow(List<AyahTranscript> transcripts, double timeOffset, double audioDuration) {
+        double from = 0, to = audioDuration;
+        if (preview.hasAyahRange()) {
+            from = audioDuration;
+            to = 0;
+            for (int i = 0; i < transcripts.size(); i++) {
+                double start = cueStart(transcripts, i, timeOffset);
+                double end = cueEnd(transcripts, i, timeOffset, audioDuration);
+                if (!inPreview(transcripts, i, start, end)) continue;
+                from = Math.min(from, start);
+                to = Math.max(to, end);
             }
+            if (to <= from) throw new IllegalArgumentException("No recited ayat in preview range "
+                    + preview.fromAyah() + "-" + preview.toAyah());
+        } else if (preview.hasTimeRange()) {
+            if (preview.fromSeconds() >= 0) from = Math.min(preview.fromSeconds(), audioDuration);
+            if (preview.toSeconds() >= 0) to = Math.min(preview.toSeconds(), audioDuration);
+            if (to <= from) throw new IllegalArgumentException("Empty preview time range");
         }
+        return new double[] {from, to};
+    }
 
-        List<Ayah> surahAyat;
-        try (Connection conn = DatabaseManager.getConnection()) {
-            surahAyat = QuranAlignmentUtils.loadSurah(conn, match.surahId, match.startAyah, joinWords(rawWords));
+    /** When cue {@code i} appears on the video timeline. */
+    private static double cueStart(List<AyahTranscript> transcripts, int i, double timeOffset) {
+        return Math.max(0, transcripts.get(i).start - timeOffset);
+    }
+
+    /** When cue {@code i} disappears; the last ayah holds until the end of the audio. */
+    private static double cueEnd(List<AyahTranscript> transcripts, int i, double timeOffset, double audioDuration) {
+        return i < transcripts.size() - 1 ? cueStart(transcripts, i + 1, timeOffset) : audioDuration;
+    }
+
+    /**
+     * When word {@code k} of cue {@code i}'s ayah is first recited, on the video timeline: the
+     * earliest start among the Whisper words aligned to it or to a later word, so a word the
+     * reciter skipped or Whisper missed lights up with the next recited one. Clamped to the cue.
+     */
+    private static double wordStart(List<AyahTranscript> transcripts, int i, int k, double cueStart, double cueEnd) {
+        AyahTranscript at = transcripts.get(i);
+        if (at.alignment == null) return cueStart;
+        // Cue times were shifted so the first cue starts at 0; the Whisper word times were not
+        AyahTranscript first = transcripts.get(0);
+        double shift = (first.words.isEmpty() ? 0 : first.words.get(0).start) + first.start;
+        double start = cueEnd;
+        for (int j = 0; j < at.alignment.length && j < at.words.size(); j++) {
+            if (at.alignment[j] >= k) start = Math.min(start, at.words.get(j).start - shift);
         }
-        if (transcripts == null || transcripts.isEmpty()) {
-            List<WordMapping> mappings = QuranAlignmentUtils.alignTranscriptFlexible(rawWords, surahAyat);
-            transcripts = QuranAlignmentUtils.buildAyahTranscripts(mappings);
+        return Math.max(cueStart, Math.min(cueEnd, start));
+    }
+
+    /** Adds each cue's karaoke highlights (rendered per ayah) to the render's sprites. */
+    private static void attachWordSprites(List<ProfileRender> renders, List<AyahTranscript> transcripts) {
+        for (ProfileRender render : renders) {
+            if (render.wordSprites.isEmpty()) continue;
+            for (int i = 0; i < transcripts.size(); i++) {
+                for (CardSprite word : render.wordSprites) {
+                    if (word.ayahNumber != transcripts.get(i).ayahNumber) continue;
+                    CardSprite cue = new CardSprite();
+                    cue.index = i;
+                    cue.ayahNumber = word.ayahNumber;
+                    cue.word = word.word;
+                    cue.file = word.file;
+                    cue.x = word.x;
+                    cue.y = word.y;
+                    cue.width = word.width;
+                    cue.height = word.height;
+                    cue.srcX = word.srcX;
+                    cue.srcY = word.srcY;
+                    render.sprites.add(cue);
+                }
+            }
         }
+    }
 
-        // Apply max verses limit
-        if (maxVerses > 0 && transcripts.size() > maxVerses) {
-            transcripts = transcripts.subList(0, maxVerses);
+    /** Renders cards for every render in one pass; per ayah when {@code transcripts} is null, else per cue. */
+    private void renderCards(List<ProfileRender> renders, List<Ayah> surahAyat,
+                             List<AyahTranscript> transcripts, IntPredicate include) throws Exception {
+        int count = transcripts == null ? surahAyat.size() : transcripts.size();
+        List<Callable<CardSprite>> cardTasks = new ArrayList<>();
+        for (ProfileRender render : renders) {
+            render.framesDir.mkdirs();
+            cardTasks.addAll(cardTasks(render.framesDir, render, surahAyat, transcripts, include));
         }
-        if (maxVerses > 0 && surahAyat.size() > maxVerses) {
-            surahAyat = surahAyat.subList(0, maxVerses);
+
+        // One pass over the shared render pool for every geometry
+        List<CardSprite> sprites = RenderPool.shared().runAll(cardTasks);
+        int offset = 0;
+        for (ProfileRender render : renders) {
+            for (CardSprite sprite : sprites.subList(offset, offset + count)) {
+                if (sprite != null && sprite.file.exists()) render.sprites.add(sprite);
+            }
+            offset += count;
         }
 
-        String suggestion = suggestBackground(match.surahId, match.startAyah, surahAyat);
-        List<File> bgVideos = PixabayDownloader.downloadBackgroundVideos(suggestion, workDir, 3);
+        if (karaoke) {
+            // Highlights are per ayah word, so an ayah recited twice reuses them
+            Set<Integer> ayahNumbers = new LinkedHashSet<>();
+            for (int i = 0; i < count; i++) {
+                if (!include.test(i)) continue;
+                ayahNumbers.add(transcripts == null ? surahAyat.get(i).number : transcripts.get(i).ayahNumber);
+            }
+            List<Ayah> karaokeAyat = surahAyat.stream().filter(a -> ayahNumbers.contains(a.number)).toList();
+            List<Callable<List<CardSprite>>> wordTasks = new ArrayList<>();
+            for (ProfileRender render : renders) wordTasks.addAll(wordTasks(render, karaokeAyat));
+            List<List<CardSprite>> words = RenderPool.shared().runAll(wordTasks);
+            offset = 0;
+            for (ProfileRender render : renders) {
+                for (List<CardSprite> perAyah : words.subList(offset, offset + karaokeAyat.size())) {
+                    render.wordSprites.addAll(perAyah);
+                }
+                offset += karaokeAyat.size();
+            }
+        }
+        if (debug) System.out.println("🔤 " + TextLayoutCache.stats());
+    }
 
-        // Render frames with sequential numbering
-        List<File> frameFiles = renderAyahFrames(framesDir, surahAyat, transcripts);
+    /**
+     * Writes one ASS script per render ({@code cards.ass} in its frames dir) with a card per
+     * cue accepted by {@code include}. Scripts are laid out at the profile's full size.
+     */
+    private void writeSubtitles(List<ProfileRender> renders, List<Ayah> surahAyat,
+                                List<AyahTranscript> transcripts, double audioDuration,
+                                IntPredicate include) throws Exception {
+        double timeOffset = transcripts.isEmpty() ? 0.0 : transcripts.get(0).start;
+        Map<Integer, Ayah> byNumber = new LinkedHashMap<>();
+        for (Ayah ayah : surahAyat) byNumber.put(ayah.number, ayah);
+        for (ProfileRender render : renders) {
+            AssScriptWriter script = new AssScriptWriter(render.geometry, karaoke);
+            for (int i = 0; i < transcripts.size(); i++) {
+                AyahTranscript at = transcripts.get(i);
+                Ayah ayah = byNumber.get(at.ayahNumber);
+                if (ayah == null || !include.test(i)) continue;
+                String raw = debug ? "[RAW] " + (at.words.isEmpty() ? "" : at.words.get(at.words.size()/2).text) : null;
+                double start = cueStart(transcripts, i, timeOffset);
+                double end = cueEnd(transcripts, i, timeOffset, audioDuration);
+                double[] words = null;
+                if (karaoke) {
+                    words = new double[ayah.words.size()];
+                    for (int k = 0; k < words.length; k++) words[k] = wordStart(transcripts, i, k, start, end);
+                }
+                script.card(start, end, ayah, raw, words);
+            }
+            render.subtitles = script.write(new File(render.framesDir, "cards.ass"));
+            render.subtitleCards = script;
+        }
+        System.out.println("📝 Wrote " + renders.size() + " ASS script(s) for " + transcripts.size() + " cues");
+    }
 
-        if (outputVideo == null) outputVideo = new File(workDir, baseName + ".mp4");
+    private void applyRetention(File workDir, File framesDir, List<File> outputs) {
+        switch (retention) {
+            case ALL -> { }
+            case CHECKPOINTS -> deleteTree(framesDir, outputs);
+            case NONE -> deleteTree(workDir, outputs);
+        }
+    }
 
-        runOptimizedFfmpeg(frameFiles, audioFile, outputVideo, bgVideos, transcripts, noBgAudio, bgVolume);
+    /**
+     * Groups the requested profiles by frame geometry. Profiles that share one
+     * (e.g. INSTAGRAM_REEL and TIKTOK) share cards and a composited video stream.
+     */
+    private List<ProfileRender> planRenders(File outputVideo, File framesDir, double scale) {
+        Map<String, ProfileRender> byGeometry = new LinkedHashMap<>();
+        for (VideoProfile p : profiles) {
+            // libx264 with yuv420p needs even dimensions
+            int width = (int) Math.round(p.width * scale / 2) * 2;
+            int height = (int) Math.round(p.height * scale / 2) * 2;
+            String key = width + "x" + height + "_" + p.fps + "_" + p.pixelFormat;
+            ProfileRender render = byGeometry.computeIfAbsent(key,
+                    k -> new ProfileRender(k, p, width, height, new File(framesDir, k)));
+            render.outputs.add(profiles.size() == 1 ? outputVideo : outputFor(outputVideo, p));
+        }
+        return new ArrayList<>(byGeometry.values());
+    }
 
-        cleanupTempDir(workDir);
+    private static File outputFor(File outputVideo, VideoProfile p) {
+        return withSuffix(outputVideo, p.name().toLowerCase());
     }
 
-    private List<File> renderAyahFrames(File framesDir, List<Ayah> surahAyat,
-                                        List<AyahTranscript> transcripts) throws Exception {
-        int width = profile.width, height = profile.height;
+    /** {@code dir/name.ext} → {@code dir/name_suffix.ext}. */
+    private static File withSuffix(File file, String suffix) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String ext = dot > 0 ? name.substring(dot) : ".mp4";
+        return new File(file.getAbsoluteFile().getParentFile(), stem + "_" + suffix + ext);
+    }
 
-        Font arabicFont = new Font("Serif", Font.BOLD, height / 20);
-        Font englishFont = new Font("Serif", Font.PLAIN, height / 35);
-        Font footnoteFont = new Font("Serif", Font.ITALIC, height / 45);
-        Font titleFont = new Font("Serif", Font.BOLD, height / 30);
-        Font rawFont = new Font("Monospaced", Font.PLAIN, height / 50);
+    /**
+     * Builds one card task per ayah (when {@code transcripts} is null) or per transcript
+     * cue, each rendering a card cropped to the text it contains. The dim layer is not
+     * part of the card; it is a single drawbox in the ffmpeg filter graph.
+     *
+     * Layout always happens at the profile's full size; a scaled-down render (preview)
+     * draws through a scale transform so text wraps exactly as in the final video.
+     * Items rejected by {@code include} get no card.
+     */
+    private List<Callable<CardSprite>> cardTasks(File framesDir, ProfileRender render, List<Ayah> surahAyat,
+                                                 List<AyahTranscript> transcripts, IntPredicate include) {
+        int width = render.geometry.width, height = render.geometry.height;
+        double scaleX = render.width / (double) width, scaleY = render.height / (double) height;
 
-        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        List<Future<File>> tasks = new ArrayList<>();
+        Font arabicFont = FontRegistry.font("Serif", Font.BOLD, height / 20);
+        Font englishFont = FontRegistry.font("Serif", Font.PLAIN, height / 35);
+        Font footnoteFont = FontRegistry.font("Serif", Font.ITALIC, height / 45);
+        Font titleFont = FontRegistry.font("Serif", Font.BOLD, height / 30);
+        Font rawFont = FontRegistry.font("Monospaced", Font.PLAIN, height / 50);
 
-        int index = 0;
-        for (AyahTranscript at : transcripts) {
-            final int frameIndex = index++;
-            tasks.add(pool.submit(() -> {
-                try {
-                    Ayah ayah = surahAyat.stream().filter(a -> a.number == at.ayahNumber).findFirst().orElse(null);
-                    if (ayah == null) return null;
+        List<Callable<CardSprite>> tasks = new ArrayList<>();
+        int count = transcripts == null ? surahAyat.size() : transcripts.size();
+        for (int index = 0; index < count; index++) {
+            final int frameIndex = index;
+            AyahTranscript at = transcripts == null ? null : transcripts.get(index);
+            if (!include.test(frameIndex)) {
+                tasks.add(() -> null);
+                continue;
+            }
+            tasks.add(() -> {
+                Ayah ayah = at == null ? surahAyat.get(frameIndex)
+                        : surahAyat.stream().filter(a -> a.number == at.ayahNumber).findFirst().orElse(null);
+                if (ayah == null) return null;
 
-                    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                BufferedImage img = CanvasPool.acquire(render.width, render.height, BufferedImage.TYPE_INT_ARGB);
+                try {
                     Graphics2D g = img.createGraphics();
                     g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-
-                    g.setColor(new Color(0, 0, 0, 180));
-                    g.fillRect(0, 0, width, height);
+                    g.scale(scaleX, scaleY);
+                    Rectangle dirty = new Rectangle();
 
                     int y = height / 10;
 
                     g.setFont(titleFont);
-                    drawTextWithShadow(g, "Surah " + ayah.surahName, width, y, Color.YELLOW);
+                    drawTextWithShadow(g, "Surah " + ayah.surahName, width, y, Color.YELLOW, dirty);
                     y += titleFont.getSize() * 3;
 
                     g.setFont(arabicFont);
-                    y = drawWrappedTextCentered(g, ayah.arabic, width, y, Color.WHITE);
+                    y = drawWrappedTextCentered(g, ayah.arabic, width, y, Color.WHITE, dirty);
                     y += arabicFont.getSize() * 2;
 
                     g.setFont(englishFont);
-                    y = drawWrappedTextCentered(g, ayah.translation, width, y, Color.LIGHT_GRAY);
+                    y = drawWrappedTextCentered(g, ayah.translation, width, y, Color.LIGHT_GRAY, dirty);
 
                     if (ayah.footnotes != null && !ayah.footnotes.isEmpty()) {
                         g.setFont(footnoteFont);
                         String combined = String.join("  ", ayah.footnotes);
-                        drawWrappedTextCentered(g, combined, width, height - 200, Color.GRAY);
+                        drawWrappedTextCentered(g, combined, width, height - 200, Color.GRAY, dirty);
                     }
 
-                    if (debug) {
+                    if (debug && at != null) {
                         g.setFont(rawFont);
                         drawTextWithShadow(g,
                                 "[RAW] " + (at.words.isEmpty() ? "" : at.words.get(at.words.size()/2).text),
-                                width, height - 60, Color.CYAN);
+                                width, height - 60, Color.CYAN, dirty);
                     }
 
+                    Rectangle deviceDirty = g.getTransform().createTransformedShape(dirty).getBounds();
                     g.dispose();
-                    File out = new File(framesDir, String.format("ayah_seq_%03d.png", frameIndex));
-                    ImageIO.write(img, "png", out);
-                    return out;
-                } catch (Exception e) { e.printStackTrace(); return null; }
-            }));
+
+                    Rectangle crop = deviceDirty.intersection(new Rectangle(0, 0, render.width, render.height));
+                    if (crop.isEmpty()) return null;
+
+                    File out = ImageFormat.intermediate().write(img.getSubimage(crop.x, crop.y, crop.width, crop.height),
+                            framesDir, at == null ? String.format("ayah_%03d", ayah.number)
+                                    : String.format("ayah_seq_%03d", frameIndex));
+
+                    CardSprite sprite = new CardSprite();
+                    sprite.index = at == null ? -1 : frameIndex;
+                    sprite.ayahNumber = ayah.number;
+                    sprite.file = out;
+                    sprite.x = crop.x;
+                    sprite.y = crop.y;
+                    sprite.width = crop.width;
+                    sprite.height = crop.height;
+                    return sprite;
+                } finally {
+                    CanvasPool.release(img);
+                }
+            });
         }
 
-        List<File> results = new ArrayList<>();
-        for (Future<File> f : tasks) {
-            File file = f.get();
-            if (file != null && file.exists()) results.add(file);
+        return tasks;
+    }
+
+    /**
+     * Builds one task per ayah that renders its karaoke highlights: each Arabic word drawn
+     * again in the highlight colour, clipped to that word and cropped to it, at the exact
+     * position it has on the card. Overlaid on the static card, they light up the words as
+     * they are recited without a full-frame image per word. The words of an ayah are packed
+     * into one image, a row per line of the card, so ffmpeg opens a single input per ayah.
+     */
+    private List<Callable<List<CardSprite>>> wordTasks(ProfileRender render, List<Ayah> ayat) {
+        int width = render.geometry.width, height = render.geometry.height;
+        double scaleX = render.width / (double) width, scaleY = render.height / (double) height;
+        // Same fonts and positions as cardTasks
+        Font arabicFont = FontRegistry.font("Serif", Font.BOLD, height / 20);
+        Font titleFont = FontRegistry.font("Serif", Font.BOLD, height / 30);
+        int arabicY = height / 10 + titleFont.getSize() * 3;
+        File wordsDir = new File(render.framesDir, "words");
+
+        List<Callable<List<CardSprite>>> tasks = new ArrayList<>();
+        for (Ayah ayah : ayat) {
+            tasks.add(() -> {
+                wordsDir.mkdirs();
+                // Character range of every ayah word in the text the card draws
+                String text = ayah.arabic;
+                int[][] ranges = new int[ayah.words.size()][];
+                int pos = 0;
+                for (int k = 0; k < ranges.length; k++) {
+                    int at = text.indexOf(ayah.words.get(k), pos);
+                    if (at < 0) at = pos;
+                    ranges[k] = new int[] {at, at + ayah.words.get(k).length()};
+                    pos = ranges[k][1];
+                }
+
+                // Same render context as the card's, so the lines break (and hit the layout cache) identically
+                Graphics2D pg = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+                pg.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                pg.scale(scaleX, scaleY);
+                List<TextLayout> lines = TextLayoutCache.layout(text, arabicFont, width - 200, false, pg.getFontRenderContext());
+                pg.dispose();
+
+                // Where each word sits on the frame, and its cell in the packed image
+                List<CardSprite> sprites = new ArrayList<>();
+                List<Shape> shapes = new ArrayList<>();
+                List<TextLayout> owners = new ArrayList<>();
+                List<float[]> origins = new ArrayList<>();
+                int atlasWidth = 0, atlasHeight = 0;
+                int lineStart = 0;
+                float y = arabicY;
+                for (TextLayout layout : lines) {
+                    int lineEnd = lineStart + layout.getCharacterCount();
+                    float dx = (width - layout.getAdvance()) / 2;
+                    int rowX = 0, rowHeight = 0;
+                    for (int k = 0; k < ranges.length; k++) {
+                        int from = Math.max(ranges[k][0], lineStart), to = Math.min(ranges[k][1], lineEnd);
+                        if (from >= to) continue;
+                        Shape word = AffineTransform.getTranslateInstance(dx, y)
+                                .createTransformedShape(layout.getLogicalHighlightShape(from - lineStart, to - lineStart));
+                        Rectangle crop = AffineTransform.getScaleInstance(scaleX, scaleY)
+                                .createTransformedShape(word).getBounds()
+                                .intersection(new Rectangle(0, 0, render.width, render.height));
+                        if (crop.isEmpty()) continue;
+
+                        CardSprite sprite = new CardSprite();
+                        sprite.index = -1;
+                        sprite.ayahNumber = ayah.number;
+                        sprite.word = k;
+                        sprite.x = crop.x;
+                        sprite.y = crop.y;
+                        sprite.width = crop.width;
+                        sprite.height = crop.height;
+                        sprite.srcX = rowX;
+                        sprite.srcY = atlasHeight;
+                        sprites.add(sprite);
+                        shapes.add(word);
+                        owners.add(layout);
+                        origins.add(new float[] {dx, y});
+                        rowX += crop.width;
+                        rowHeight = Math.max(rowHeight, crop.height);
+                    }
+                    atlasWidth = Math.max(atlasWidth, rowX);
+                    atlasHeight += rowHeight;
+                    y += layout.getAscent() + layout.getDescent() + layout.getLeading();
+                    lineStart = lineEnd;
+                }
+                if (sprites.isEmpty()) return sprites;
+
+                // Packed canvases vary in size too much to be worth pooling
+                BufferedImage img = new BufferedImage(atlasWidth, atlasHeight, BufferedImage.TYPE_INT_ARGB);
+                for (int s = 0; s < sprites.size(); s++) {
+                    CardSprite sprite = sprites.get(s);
+                    Graphics2D g = img.createGraphics();
+                    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                    g.clipRect(sprite.srcX, sprite.srcY, sprite.width, sprite.height);
+                    g.translate(sprite.srcX - sprite.x, sprite.srcY - sprite.y);
+                    g.scale(scaleX, scaleY);
+                    g.clip(shapes.get(s));
+                    g.setColor(KARAOKE_HIGHLIGHT);
+                    owners.get(s).draw(g, origins.get(s)[0], origins.get(s)[1]);
+                    g.dispose();
+                }
+                File file = ImageFormat.intermediate().write(img, wordsDir, String.format("ayah_%03d_words", ayah.number));
+                for (CardSprite sprite : sprites) sprite.file = file;
+                return sprites;
+            });
         }
-        pool.shutdown();
-        return results;
+        return tasks;
     }
 
-    private static void runOptimizedFfmpeg(List<File> frameFiles, File audioFile, File outputVideo,
-                                           List<File> bgVideos, List<AyahTranscript> transcripts,
-                                           boolean noBgAudio, double bgVolume) throws Exception {
-        double audioDuration = getAudioDuration(audioFile);
+    /**
+     * Composites and encodes every render in one ffmpeg run. With {@code draft} set, the
+     * backgrounds are a solid colour or a held first frame, only the preview window of the
+     * timeline is written, and x264 runs with the ultrafast preset. With {@code slice} only
+     * that part of the timeline is written.
+     *
+     * A partial window is not composited from the start: inputs are seeked on the input
+     * side to where the window begins (see {@link #compositionStart}), background clips and
+     * cards (sprites or subtitle events) that are not on screen during the window are left
+     * out, and the rest are timed relative to it. A segment therefore costs about as much as its own length.
+     */
+    private void runOptimizedFfmpeg(List<ProfileRender> renders, File audioFile,
+                                    List<AyahTranscript> transcripts,
+                                    boolean noBgAudio, double bgVolume, PreviewOptions draft,
+                                    Slice slice) throws Exception {
+        double audioDuration = MediaProbe.duration(audioFile);
         double timeOffset = transcripts.isEmpty() ? 0.0 : transcripts.get(0).start;
+        double[] window = slice != null ? new double[] {slice.from(), slice.to()}
+                : draft != null ? previewWindow(transcripts, timeOffset, audioDuration)
+                : new double[] {0, audioDuration};
+        // Time 0 of the composition is this point of the final timeline
+        double origin = draft != null ? window[0]
+                : compositionStart(window[0], renders.get(0).bgVideos.size(), audioDuration);
 
         List<String> cmd = new ArrayList<>();
         cmd.add("ffmpeg"); cmd.add("-y");
 
-        for (File bg : bgVideos) {
-            cmd.add("-stream_loop"); cmd.add("-1"); cmd.add("-i"); cmd.add(bg.getAbsolutePath());
-        }
-        for (File img : frameFiles) {
-            cmd.add("-i"); cmd.add(img.getAbsolutePath());
-        }
-        cmd.add("-i"); cmd.add(audioFile.getAbsolutePath());
-
         StringBuilder filter = new StringBuilder();
+        List<String> videoOuts = new ArrayList<>();
+        // Background clips of the first render already opened at a given position, by clip
+        Map<Integer, double[]> clipInputs = new LinkedHashMap<>();
+        // Files written for this run only, removed once it is done
+        List<File> runFiles = new ArrayList<>();
+        int inputIndex = 0;
 
-        for (int i=0; i<bgVideos.size(); i++) {
-            filter.append("[").append(i).append(":v]")
-                .append("scale=1920:1080,fps=30,format=yuv420p")
-                .append(",colorchannelmixer=aa=0.6")
-                .append("[v").append(i).append("];");
-        }
+        for (int r=0; r<renders.size(); r++) {
+            ProfileRender render = renders.get(r);
+            List<File> bgVideos = render.bgVideos;
+            List<CardSprite> sprites = render.sprites;
+            String tag = "p" + r + "_";
 
-        String last = "[v0]";
-        for (int i=1; i<bgVideos.size(); i++) {
-            String next = "[v"+i+"]";
-            String out = "[vx"+i+"]";
-            double offset = (audioDuration/bgVideos.size())*i;
-            filter.append(last).append(next)
-                  .append("xfade=transition=fade:duration=2:offset=")
-                  .append(offset).append(out).append(";");
-            last = out;
-        }
+            int bgInputs;
+            int firstClip = 0;
+            if (bgVideos.isEmpty()) {
+                // Solid preview background
+                bgInputs = 1;
+                cmd.add("-f"); cmd.add("lavfi");
+                cmd.add("-i"); cmd.add("color=c=0x10141c:s=" + render.width + "x" + render.height + ":r=" + render.fps);
+                filter.append("[").append(inputIndex).append(":v]format=").append(render.pixelFormat)
+                    .append("[").append(tag).append("v0];");
+            } else if (draft != null) {
+                // Raw downloaded clip: hold its first frame for the whole preview
+                bgInputs = 1;
+                cmd.add("-i"); cmd.add(bgVideos.get(0).getAbsolutePath());
+                filter.append("[").append(inputIndex).append(":v]trim=end_frame=1,")
+                    .append("scale=").append(render.width).append(":").append(render.height)
+                    .append(":force_original_aspect_ratio=increase,crop=").append(render.width).append(":").append(render.height)
+                    .append(",setsar=1,loop=loop=-1:size=1,setpts=N/(").append(render.fps).append("*TB)")
+                    .append(",format=").append(render.pixelFormat)
+                    .append("[").append(tag).append("v0];");
+            } else {
+                // Only the clips on screen during the window; the first one joins mid-loop
+                int n = bgVideos.size();
+                List<MediaProbe.Info> clipInfo = MediaProbe.probeAll(bgVideos);
+                int lastClip = 0;
+                for (int i = 0; i < n; i++) {
+                    if (clipStart(i, n, audioDuration) >= window[1]) break;
+                    if (i < n - 1 && clipStart(i + 1, n, audioDuration) + BG_FADE_SECONDS <= origin) firstClip = i + 1;
+                    lastClip = i;
+                }
+                bgInputs = lastClip - firstClip + 1;
+                for (int i = firstClip; i <= lastClip; i++) {
+                    double seek = i == firstClip
+                            ? loopPosition(origin - clipStart(i, n, audioDuration), clipInfo.get(i).durationSeconds()) : 0;
+                    cmd.add("-stream_loop"); cmd.add("-1");
+                    if (seek > 0) { cmd.add("-ss"); cmd.add(String.valueOf(seek)); }
+                    cmd.add("-i"); cmd.add(bgVideos.get(i).getAbsolutePath());
+                    if (r == 0) clipInputs.put(i, new double[] {inputIndex + i - firstClip, seek});
+                }
+                // Backgrounds come pre-transcoded to the profile's size/fps/pixel format (BackgroundCache)
+                for (int k=0; k<bgInputs; k++) {
+                    filter.append("[").append(inputIndex + k).append(":v]")
+                        .append("colorchannelmixer=aa=0.6")
+                        .append("[").append(tag).append("v").append(k).append("];");
+                }
+            }
+
+            String last = "[" + tag + "v0]";
+            for (int k=1; draft == null && k<bgInputs; k++) {
+                String next = "[" + tag + "v" + k + "]";
+                String out = "[" + tag + "vx" + k + "]";
+                double offset = clipStart(firstClip + k, bgVideos.size(), audioDuration) - origin;
+                filter.append(last).append(next)
+                      .append("xfade=transition=fade:duration=").append(BG_FADE_SECONDS).append(":offset=")
+                      .append(offset).append(out).append(";");
+                last = out;
+            }
+            inputIndex += bgInputs;
 
-        String videoBase = last;
-        for (int i=0; i<frameFiles.size(); i++) {
-            AyahTranscript at = transcripts.get(i);
-            double start = Math.max(0, at.start - timeOffset);
-            // 🟢 Fix: last ayah holds until end of audio
-            double nextStart = (i < transcripts.size()-1)
-                    ? Math.max(0, transcripts.get(i+1).start - timeOffset)
-                    : audioDuration;
+            // Dim layer that used to be baked into every full-frame card
+            filter.append(last).append("drawbox=x=0:y=0:w=iw:h=ih:color=black@")
+                  .append(CARD_DIM_OPACITY).append(":t=fill[").append(tag).append("vdim];");
 
-            String imgIn = "[" + (bgVideos.size() + i) + ":v]";
-            String out = "[vv" + i + "]";
-            filter.append(videoBase).append(imgIn)
-                .append("overlay=(W-w)/2:(H-h)/2:enable='between(t\\,")
-                .append(start).append("\\,").append(nextStart).append(")'")
-                .append(out).append(";");
-            videoBase = out;
+            String videoBase = "[" + tag + "vdim]";
+            if (render.subtitles != null) {
+                File subtitles = render.subtitles;
+                if (render.subtitleCards != null && (origin > 0 || window[1] < audioDuration)) {
+                    // Only the cards on screen during the window, timed from origin
+                    subtitles = render.subtitleCards.write(new File(render.framesDir,
+                            String.format(Locale.ROOT, "cards_%.3f_%.3f.ass", origin, window[1])), origin, window[1]);
+                    runFiles.add(subtitles);
+                }
+                String out = "[" + tag + "vass]";
+                filter.append(videoBase).append("ass=filename=").append(filterPath(subtitles))
+                      .append(":fontsdir=").append(filterPath(AssScriptWriter.fontsDir()))
+                      .append(out).append(";");
+                videoBase = out;
+            }
+            // Sprites on screen during the window; each file is opened once and split between its overlays
+            List<CardSprite> shown = new ArrayList<>();
+            List<double[]> shownTimes = new ArrayList<>();
+            Map<File, Integer> uses = new LinkedHashMap<>();
+            for (CardSprite sprite : sprites) {
+                double start = cueStart(transcripts, sprite.index, timeOffset);
+                double nextStart = cueEnd(transcripts, sprite.index, timeOffset, audioDuration);
+                if (sprite.word >= 0) {
+                    // A karaoke highlight stays on from its word until the card goes away
+                    start = wordStart(transcripts, sprite.index, sprite.word, start, nextStart);
+                }
+                if (nextStart <= origin || start >= window[1]) continue;
+                shown.add(sprite);
+                shownTimes.add(new double[] {start, nextStart});
+                uses.merge(sprite.file, 1, Integer::sum);
+            }
+            Map<File, Integer> spriteInputs = new LinkedHashMap<>();
+            for (Map.Entry<File, Integer> use : uses.entrySet()) {
+                cmd.add("-i"); cmd.add(use.getKey().getAbsolutePath());
+                if (use.getValue() > 1) {
+                    filter.append("[").append(inputIndex).append(":v]split=").append(use.getValue());
+                    for (int k=0; k<use.getValue(); k++) {
+                        filter.append("[").append(tag).append("s").append(inputIndex).append("_").append(k).append("]");
+                    }
+                    filter.append(";");
+                }
+                spriteInputs.put(use.getKey(), inputIndex++);
+            }
+
+            Map<File, Integer> taken = new LinkedHashMap<>();
+            for (int s=0; s<shown.size(); s++) {
+                CardSprite sprite = shown.get(s);
+                int input = spriteInputs.get(sprite.file);
+                int copy = taken.merge(sprite.file, 1, Integer::sum) - 1;
+                String imgIn = uses.get(sprite.file) > 1
+                        ? "[" + tag + "s" + input + "_" + copy + "]"
+                        : "[" + input + ":v]";
+                if (sprite.word >= 0) {
+                    // Highlights of an ayah share one image; cut this word out of it
+                    String word = "[" + tag + "w" + s + "]";
+                    filter.append(imgIn).append("crop=").append(sprite.width).append(":").append(sprite.height)
+                          .append(":").append(sprite.srcX).append(":").append(sprite.srcY).append(word).append(";");
+                    imgIn = word;
+                }
+                String out = "[" + tag + "vv" + s + "]";
+                filter.append(videoBase).append(imgIn)
+                    .append("overlay=").append(sprite.x).append(":").append(sprite.y)
+                    .append(":enable='between(t\\,")
+                    .append(Math.max(0, shownTimes.get(s)[0] - origin)).append("\\,")
+                    .append(shownTimes.get(s)[1] - origin).append(")'")
+                    .append(out).append(";");
+                videoBase = out;
+            }
+
+            // Profiles sharing this geometry get copies of the same composited stream
+            if (render.outputs.size() == 1) {
+                videoOuts.add(videoBase);
+            } else {
+                filter.append(videoBase).append("split=").append(render.outputs.size());
+                for (int k=0; k<render.outputs.size(); k++) {
+                    String out = "[" + tag + "out" + k + "]";
+                    filter.append(out);
+                    videoOuts.add(out);
+                }
+                filter.append(";");
+            }
         }
 
-        int recitationIndex = bgVideos.size() + frameFiles.size();
+        int recitationIndex = inputIndex++;
+        if (origin > 0) { cmd.add("-ss"); cmd.add(String.valueOf(origin)); }
+        cmd.add("-i"); cmd.add(AudioTrackCache.prepare(audioFile).getAbsolutePath());
 
+        // Every profile uses the same clips, so the first render's clips carry the background audio.
+        // Each clip's audio loops from the start of the video, whichever clip is on screen.
+        ProfileRender first = renders.get(0);
+        List<String> amixInputsList = new ArrayList<>();
         if (!noBgAudio) {
-            List<String> amixInputsList = new ArrayList<>();
-            for (int i=0; i<bgVideos.size(); i++) {
-                ProcessBuilder probe = new ProcessBuilder("ffprobe", "-i", bgVideos.get(i).getAbsolutePath(),
-                        "-show_streams", "-select_streams", "a", "-loglevel", "error");
-                Process proc = probe.start();
-                String probeOut = new String(proc.getInputStream().readAllBytes());
-                proc.waitFor();
-
-                if (!probeOut.isBlank()) {
-                    filter.append("[").append(i).append(":a]volume=").append(bgVolume)
+            List<MediaProbe.Info> bgInfo = MediaProbe.probeAll(first.bgVideos);
+            for (int i=0; i<first.bgVideos.size(); i++) {
+                if (bgInfo.get(i).hasAudio()) {
+                    double seek = loopPosition(origin, bgInfo.get(i).durationSeconds());
+                    double[] opened = clipInputs.get(i);
+                    int input;
+                    if (opened != null && Math.abs(opened[1] - seek) < 1e-6) {
+                        input = (int) opened[0];
+                    } else {
+                        // The clip's picture is off screen or at another position: open it again for its audio
+                        input = inputIndex++;
+                        cmd.add("-stream_loop"); cmd.add("-1");
+                        if (seek > 0) { cmd.add("-ss"); cmd.add(String.valueOf(seek)); }
+                        cmd.add("-i"); cmd.add(first.bgVideos.get(i).getAbsolutePath());
+                    }
+                    filter.append("[").append(input).append(":a]volume=").append(bgVolume)
                           .append("[aud").append(i).append("];");
                     amixInputsList.add("[aud"+i+"]");
                 }
             }
+        }
+
+        // Without anything to mix, the pre-encoded recitation track is stream-copied
+        boolean copyAudio = amixInputsList.isEmpty();
+        List<String> audioOuts = new ArrayList<>();
+        if (copyAudio) {
+            for (int k=0; k<videoOuts.size(); k++) audioOuts.add(recitationIndex + ":a");
+        } else {
             amixInputsList.add("[" + recitationIndex + ":a]");
             filter.append(String.join("", amixInputsList))
                   .append("amix=inputs=").append(amixInputsList.size())
                   .append(":normalize=0[aout];");
-        } else {
-            filter.append("[").append(recitationIndex).append(":a]anull[aout];");
+            if (videoOuts.size() == 1) {
+                audioOuts.add("[aout]");
+            } else {
+                filter.append("[aout]asplit=").append(videoOuts.size());
+                for (int k=0; k<videoOuts.size(); k++) {
+                    filter.append("[aout").append(k).append("]");
+                    audioOuts.add("[aout" + k + "]");
+                }
+                filter.append(";");
+            }
         }
 
-        cmd.add("-filter_complex"); cmd.add(filter.toString());
-        cmd.add("-map"); cmd.add(videoBase);
-        cmd.add("-map"); cmd.add("[aout]");
-        cmd.add("-t"); cmd.add(String.valueOf(audioDuration));
-        cmd.add("-shortest");
+        try (CpuBudget.Lease lease = CpuBudget.encode()) {
+            // With an overlay per card and word the graph outgrows a single argument (E2BIG); ffmpeg reads it from a file
+            File framesDir = renders.get(0).framesDir;
+            framesDir.mkdirs();
+            File graph = Files.createTempFile(framesDir.toPath(), "graph", ".txt").toFile();
+            runFiles.add(graph);
+            Files.writeString(graph.toPath(), filter, StandardCharsets.UTF_8);
+            cmd.add("-filter_complex_script"); cmd.add(graph.getAbsolutePath());
+
+            // Outputs of this run share the encoder budget
+            int encoderThreads = Math.max(1, lease.threads() / videoOuts.size());
+            int o = 0;
+            for (ProfileRender render : renders) {
+                for (File output : render.outputs) {
+                    if (output.getParentFile() != null) output.getParentFile().mkdirs();
+                    cmd.add("-map"); cmd.add(videoOuts.get(o));
+                    cmd.add("-map"); cmd.add(audioOuts.get(o));
+                    // Inputs start at origin; drop the lead-in of a crossfade the window opens inside
+                    if (window[0] > origin) { cmd.add("-ss"); cmd.add(String.valueOf(window[0] - origin)); }
+                    cmd.add("-t"); cmd.add(String.valueOf(window[1] - window[0]));
+                    cmd.add("-shortest");
 
-        cmd.add("-c:v"); cmd.add("libx264");
-        cmd.add("-pix_fmt"); cmd.add("yuv420p");
-        cmd.add("-c:a"); cmd.add("aac");
-        cmd.add(outputVideo.getAbsolutePath());
+                    cmd.add("-c:v"); cmd.add("libx264");
+                    if (draft != null) {
+                        cmd.add("-preset"); cmd.add("ultrafast");
+                        cmd.add("-crf"); cmd.add("30");
+                    }
+                    cmd.add("-threads"); cmd.add(String.valueOf(encoderThreads));
+                    cmd.add("-pix_fmt"); cmd.add("yuv420p");
+                    cmd.add("-c:a"); cmd.add(copyAudio ? "copy" : "aac");
+                    if (slice != null && slice.fragmented()) {
+                        // Self-contained fMP4 on the full timeline, ready to be listed in an HLS playlist as is
+                        cmd.add("-output_ts_offset"); cmd.add(String.valueOf(window[0]));
+                        cmd.add("-movflags"); cmd.add("+frag_keyframe+empty_moov+default_base_moof+skip_trailer");
+                        cmd.add("-f"); cmd.add("mp4");
+                    }
+                    cmd.add(output.getAbsolutePath());
+                    o++;
+                }
+            }
 
-        ProcessBuilder pb = new ProcessBuilder(cmd);
-        pb.inheritIO();
-        int exit = pb.start().waitFor();
-        if (exit != 0) throw new IllegalStateException("ffmpeg failed with exit code " + exit);
+            FfmpegRunner.run(draft != null ? "preview" : slice != null ? "segment" : "encode",
+                    window[1] - window[0], cmd);
+        } finally {
+            for (File file : runFiles) file.delete();
+        }
+    }
+
+    /** When background clip {@code i} of {@code clips} starts fading in on the final timeline. */
+    private static double clipStart(int i, int clips, double audioDuration) {
+        return i == 0 ? 0 : (audioDuration / clips) * i;
+    }
+
+    /** Position inside a clip looped from the start of the timeline, {@code t} seconds in. */
+    private static double loopPosition(double t, double duration) {
+        if (t <= 0) return 0;
+        return duration > 0 ? t % duration : t;
     }
 
-    private static double getAudioDuration(File audioFile) throws Exception {
-        ProcessBuilder pb = new ProcessBuilder("ffprobe","-v","error",
-                "-show_entries","format=duration",
-                "-of","default=noprint_wrappers=1:nokey=1",
-                audioFile.getAbsolutePath());
-        Process proc = pb.start();
-        String output = new String(proc.getInputStream().readAllBytes()).trim();
-        String error = new String(proc.getErrorStream().readAllBytes()).trim();
-        int exit = proc.waitFor();
-        if (exit != 0 || output.isBlank()) {
-            throw new IllegalStateException("ffprobe failed to get duration. Exit=" + exit + ", stderr=" + error);
+    /**
+     * Where a composition for a window starting at {@code from} has to begin: the window start
+     * itself, or the start of the background crossfade it falls inside, which xfade can only
+     * render from its beginning.
+     */
+    private static double compositionStart(double from, int clips, double audioDuration) {
+        for (int i = 1; i < clips; i++) {
+            double fade = clipStart(i, clips, audioDuration);
+            if (fade < from && from < fade + BG_FADE_SECONDS) return fade;
         }
-        return Double.parseDouble(output);
+        return from;
+    }
+
+    /** A path as an option value inside a filter graph: forward slashes, with ':' and quotes escaped. */
+    private static String filterPath(File file) {
+        String path = file.getAbsolutePath().replace('\\', '/');
+        return path.replace(":", "\\\\:").replace("'", "\\\\\\'");
     }
 
-    private static void cleanupTempDir(File dir) {
+    /** Deletes {@code dir} recursively, sparing any of the {@code keep} files that live inside it. */
+    private static void deleteTree(File dir, List<File> keep) {
         if (dir == null || !dir.exists()) return;
-        try {
-            Files.walk(dir.toPath()).map(java.nio.file.Path::toFile)
-                    .sorted((a,b)->-a.compareTo(b)).forEach(File::delete);
+        List<java.nio.file.Path> kept = keep.stream().map(f -> f.getAbsoluteFile().toPath()).toList();
+        try (var paths = Files.walk(dir.toPath())) {
+            paths.map(java.nio.file.Path::toFile)
+                    .sorted((a,b)->-a.compareTo(b))
+                    .filter(f -> kept.stream().noneMatch(k -> k.startsWith(f.getAbsoluteFile().toPath())))
+                    .forEach(File::delete);
             System.out.println("🧹 Cleaned temp dir: " + dir.getAbsolutePath());
         } catch (Exception e) {
             System.err.println("⚠ Failed to clean temp dir: " + e.getMessage());
@@ -365,40 +1492,71 @@ public class QuranRecitationVideoMaker {
         } catch (Exception e) { return "Abstract gradient background (fallback)"; }
     }
 
-    private static int drawWrappedTextCentered(Graphics2D g, String text, int width, int y, Color color) {
+    private static int drawWrappedTextCentered(Graphics2D g, String text, int width, int y, Color color, Rectangle dirty) {
         if (text == null || text.isBlank()) return y;
-        AttributedString attrStr = new AttributedString(text);
-        attrStr.addAttribute(TextAttribute.FONT, g.getFont());
-        AttributedCharacterIterator it = attrStr.getIterator();
-        LineBreakMeasurer lbm = new LineBreakMeasurer(it, g.getFontRenderContext());
         float wrapWidth = width - 200;
-        while (lbm.getPosition() < it.getEndIndex()) {
-            var layout = lbm.nextLayout(wrapWidth);
+        for (TextLayout layout : TextLayoutCache.layout(text, g.getFont(), wrapWidth, false, g.getFontRenderContext())) {
             float dx = (width - layout.getAdvance()) / 2;
             g.setColor(new Color(0,0,0,180)); layout.draw(g, dx+3, y+3);
             g.setColor(color); layout.draw(g, dx, y);
+            markDirty(dirty, layout, dx, y);
             y += layout.getAscent()+layout.getDescent()+layout.getLeading();
         }
         return y;
     }
 
-    private static void drawTextWithShadow(Graphics2D g, String text, int width, int y, Color color) {
-        if (text == null || text.isBlank()) return;
-        AttributedString attrStr = new AttributedString(text);
-        attrStr.addAttribute(TextAttribute.FONT, g.getFont());
-        AttributedCharacterIterator it = attrStr.getIterator();
-        LineBreakMeasurer lbm = new LineBreakMeasurer(it, g.getFontRenderContext());
-        float wrapWidth = width - 200;
-        while (lbm.getPosition() < it.getEndIndex()) {
-            var layout = lbm.nextLayout(wrapWidth);
-            float dx = (width - layout.getAdvance()) / 2;
-            g.setColor(new Color(0,0,0,180)); layout.draw(g, dx+3, y+3);
-            g.setColor(color); layout.draw(g, dx, y);
-            y += layout.getAscent()+layout.getDescent()+layout.getLeading();
-        }
+    private static void drawTextWithShadow(Graphics2D g, String text, int width, int y, Color color, Rectangle dirty) {
+        drawWrappedTextCentered(g, text, width, y, color, dirty);
+    }
+
+    /** Grows {@code dirty} to cover a line drawn at (x, y) and its +3px shadow, with room for antialiasing. */
+    private static void markDirty(Rectangle dirty, TextLayout layout, float x, float y) {
+        Rectangle r = layout.getPixelBounds(null, x, y);
+        r.add(new Rectangle(r.x + 3, r.y + 3, r.width, r.height));
+        r.grow(2, 2);
+        if (dirty.isEmpty()) dirty.setBounds(r);
+        else dirty.add(r);
     }
 
     private static String joinWords(List<Word> words) {
         return String.join(" ", words.stream().map(w->w.text).toList());
     }
-}
\ No newline at end of file
+
+    /** Part of the timeline to encode; {@code fragmented} writes fragmented MP4 for HLS. */
+    private record Slice(double from, double to, boolean fragmented) {
+    }
+
+    /** One frame geometry to render, and the profile outputs that use it. */
+
+    private static class ProfileRender {
+
+        final String key;
+        /** Profile the cards are laid out for. */
+        final VideoProfile geometry;
+        /** Frame size actually rendered and encoded; smaller than {@link #geometry} for previews. */
+        final int width;
+        final int height;
+        final int fps;
+        final String pixelFormat;
+        final File framesDir;
+        final List<File> outputs = new ArrayList<>();
+        final List<CardSprite> sprites = new ArrayList<>();
+        /** Karaoke highlights per ayah word, before {@link #attachWordSprites} maps them to cues. */
+        final List<CardSprite> wordSprites = new ArrayList<>();
+        /** ASS script burned in instead of sprites (ASS backend). */
+        File subtitles;
+        /** Cards of {@link #subtitles}, for scripts covering one window of the timeline. */
+        AssScriptWriter subtitleCards;
+        List<File> bgVideos = new ArrayList<>();
+
+        ProfileRender(String key, VideoProfile geometry, int width, int height, File framesDir) {
+            this.key = key;
+            this.geometry = geometry;
+            this.width = width;
+            this.height = height;
+            this.fps = geometry.fps;
+            this.pixelFormat = geometry.pixelFormat;
+            this.framesDir = framesDir;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.syntex.islamicstudio.media.quran;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.syntex.islamicstudio.media.FfmpegRunner;
+import com.syntex.islamicstudio.media.MediaProbe;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.CardBackend;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.RetentionPolicy;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.VideoProfile;
+import com.syntex.islamicstudio.media.quran.model.ShardTask;
+import com.syntex.islamicstudio.util.FileHashes;
+
+/**
+ * Coordinator side of the {@link ShardQueue} protocol.
+ *
+ * Short recitations become one VIDEO task each. Long ones are prepared here
+ * (transcription through card rendering, checkpointed in their work dir), split
+ * at ayah boundaries with {@link QuranRecitationVideoMaker#planSegments}, and
+ * queued as SEGMENT tasks that any worker can encode from the same checkpoints;
+ * their encoded segments are stream-copied back together with ffmpeg's concat
+ * demuxer once all of them are done.
+ */
+public class ShardCoordinator {
+
+    /** Claims not touched for this long belong to a dead worker and go back to pending. */
+    private static final long STALE_MILLIS = ShardWorker.HEARTBEAT_MILLIS * 6;
+
+    private final ShardQueue queue;
+    private List<VideoProfile> profiles = List.of(VideoProfile.DESKTOP);
+    private RetentionPolicy retention = RetentionPolicy.CHECKPOINTS;
+    private CardBackend backend = CardBackend.SPRITES;
+    private boolean karaoke;
+    private boolean noBgAudio;
+    private int maxVerses;
+    private double bgVolume = 0.2;
+    private boolean debug;
+    private double segmentSeconds = 300;
+    private int maxAttempts = 2;
+
+    /** A recitation split into segments, and where the merged result goes. */
+    private static class Split {
+        File audio;
+        File output;
+        List<String> taskIds = new ArrayList<>();
+    }
+
+    public ShardCoordinator(ShardQueue queue) {
+        this.queue = queue;
+    }
+
+    public void setProfiles(List<VideoProfile> profiles) {
+        this.profiles = List.copyOf(profiles);
+    }
+
+    public void setRetention(RetentionPolicy retention) {
+        this.retention = retention;
+    }
+
+    public void setBackend(CardBackend backend) {
+        this.backend = backend;
+    }
+
+    public void setKaraoke(boolean karaoke) {
+        this.karaoke = karaoke;
+    }
+
+    public void setAudio(boolean noBgAudio, double bgVolume) {
+        this.noBgAudio = noBgAudio;
+        this.bgVolume = bgVolume;
+    }
+
+    public void setMaxVerses(int maxVerses) {
+        this.maxVerses = maxVerses;
+    }
+
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    /** Recitations longer than 1.5x this are split into segments of about this length. */
+    public void setSegmentSeconds(double segmentSeconds) {
+        this.segmentSeconds = segmentSeconds;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * Queues every recitation, waits for the workers, merges segmented videos and
+     * returns the final videos per recitation (in input order). {@code workers} are
+     * processes the caller started (or will start) against the same queue; the
+     * coordinator gives up early only if all of them have exited with work left.
+     */
+    public Map<File, List<File>> run(List<File[]> recitations, List<Process> workers) throws Exception {
+        Map<String, File> videoTasks = new LinkedHashMap<>();
+        List<Split> splits = new ArrayList<>();
+        Map<File, List<File>> results = new LinkedHashMap<>();
+
+        for (File[] r : recitations) {
+            File audio = r[0], output = r[1];
+            results.put(audio, new ArrayList<>());
+            String id = taskId(audio);
+            if (MediaProbe.duration(audio) <= segmentSeconds * 1.5) {
+                ShardTask task = newTask(id, ShardTask.Type.VIDEO, audio, output);
+                queue.submit(task);
+                videoTasks.put(task.id, audio);
+            }
+        }
+
+        // Long recitations: prepare here while workers already take the short ones
+        for (File[] r : recitations) {
+            File audio = r[0], output = r[1];
+            if (MediaProbe.duration(audio) <= segmentSeconds * 1.5) continue;
+
+            QuranRecitationVideoMaker maker = newMaker();
+            List<double[]> windows = maker.planSegments(audio, maxVerses, segmentSeconds);
+            System.out.println("✂️ " + audio.getName() + ": " + windows.size() + " segments");
+
+            Split split = new Split();
+            split.audio = audio;
+            split.output = output;
+            for (int i = 0; i < windows.size(); i++) {
+                String id = taskId(audio) + String.format("-s%03d", i);
+                File segmentDir = new File(queue.root(), "segments/" + id);
+                ShardTask task = newTask(id, ShardTask.Type.SEGMENT, audio, new File(segmentDir, output.getName()));
+                task.from = windows.get(i)[0];
+                task.to = windows.get(i)[1];
+                queue.submit(task);
+                split.taskIds.add(id);
+            }
+            splits.add(split);
+        }
+
+        int total = videoTasks.size() + splits.stream().mapToInt(s -> s.taskIds.size()).sum();
+        Map<String, ShardTask> finished = waitForAll(total, workers);
+
+        for (Map.Entry<String, File> e : videoTasks.entrySet()) {
+            ShardTask task = finished.get(e.getKey());
+            if (task != null && task.error == null) {
+                for (String out : task.outputs) results.get(e.getValue()).add(new File(out));
+            }
+        }
+        for (Split split : splits) {
+            List<File> merged = merge(split, finished);
+            results.get(split.audio).addAll(merged);
+            if (!merged.isEmpty()) newMaker().cleanUp(split.audio, merged);
+        }
+        return results;
+    }
+
+    /** Polls the queue until every task is done or out of attempts; returns the final state per task id. */
+    private Map<String, ShardTask> waitForAll(int total, List<Process> workers) throws Exception {
+        Map<String, ShardTask> finished = new LinkedHashMap<>();
+        int reported = -1;
+        while (true) {
+            int requeued = queue.requeueStale(STALE_MILLIS);
+            if (requeued > 0) System.out.println("♻️ Requeued " + requeued + " stale task(s)");
+
+            for (ShardTask task : queue.failed()) {
+                if (task.attempts + 1 < maxAttempts) {
+                    System.out.println("🔁 Retrying " + task.id + " (" + task.error + ")");
+                    queue.retry(task);
+                } else {
+                    finished.put(task.id, task);
+                }
+            }
+            for (ShardTask task : queue.done()) finished.put(task.id, task);
+
+            if (finished.size() != reported) {
+                reported = finished.size();
+                System.out.println("📦 " + reported + "/" + total + " tasks finished, "
+                        + queue.claimedCount() + " running, " + queue.pendingCount() + " pending");
+            }
+            if (finished.size() >= total) return finished;
+
+            if (!workers.isEmpty() && workers.stream().noneMatch(Process::isAlive)) {
+                throw new IllegalStateException("All workers exited with " + (total - finished.size()) + " task(s) left");
+            }
+            Thread.sleep(1000);
+        }
+    }
+
+    /** Concatenates one recitation's segments per profile output, without re-encoding. */
+    private List<File> merge(Split split, Map<String, ShardTask> finished) throws Exception {
+        List<ShardTask> segments = new ArrayList<>();
+        for (String id : split.taskIds) {
+            ShardTask task = finished.get(id);
+            if (task == null || task.error != null) {
+                System.err.println("❌ " + split.audio.getName() + ": segment " + id + " failed, not merging");
+                return List.of();
+            }
+            segments.add(task);
+        }
+
+        List<File> merged = new ArrayList<>();
+        int outputsPerSegment = segments.get(0).outputs.size();
+        for (int k = 0; k < outputsPerSegment; k++) {
+            // Segment outputs carry the final file name (profile suffix included)
+            File first = new File(segments.get(0).outputs.get(k));
+            File target = new File(split.output.getAbsoluteFile().getParentFile(), first.getName());
+            target.getParentFile().mkdirs();
+
+            File list = new File(queue.root(), "segments/" + taskId(split.audio) + "-" + k + ".txt");
+            StringBuilder sb = new StringBuilder();
+            for (ShardTask segment : segments) {
+                String path = new File(segment.outputs.get(k)).getAbsolutePath().replace("'", "'\\''");
+                sb.append("file '").append(path).append("'\n");
+            }
+            Files.writeString(list.toPath(), sb.toString());
+
+            File tmp = new File(target.getParentFile(), "." + target.getName() + ".part.mp4");
+            FfmpegRunner.run("concat " + target.getName(), MediaProbe.duration(split.audio), List.of(
+                    "ffmpeg", "-y",
+                    "-f", "concat", "-safe", "0", "-i", list.getAbsolutePath(),
+                    "-c", "copy", "-movflags", "+faststart",
+                    tmp.getAbsolutePath()));
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            merged.add(target);
+        }
+        return merged;
+    }
+
+    private ShardTask newTask(String id, ShardTask.Type type, File audio, File output) {
+        ShardTask task = new ShardTask();
+        task.id = id;
+        task.type = type;
+        task.audio = audio.getAbsolutePath();
+        task.output = output.getAbsolutePath();
+        task.profiles = new ArrayList<>(profiles.stream().map(Enum::name).toList());
+        task.noBgAudio = noBgAudio;
+        task.maxVerses = maxVerses;
+        task.bgVolume = bgVolume;
+        task.debug = debug;
+        task.retention = retention.name();
+        task.backend = backend.name();
+        task.karaoke = karaoke;
+        return task;
+    }
+
+    private QuranRecitationVideoMaker newMaker() {
+        QuranRecitationVideoMaker maker = new QuranRecitationVideoMaker(debug);
+        maker.setProfiles(profiles);
+        maker.setRetention(retention);
+        maker.setBackend(backend);
+        maker.setKaraoke(karaoke);
+        return maker;
+    }
+
+    private static String taskId(File audio) {
+        String name = audio.getName();
+        int dot = name.lastIndexOf('.');
+        String stem = (dot > 0 ? name.substring(0, dot) : name).replaceAll("[^A-Za-z0-9_-]", "_");
+        return stem + "-" + FileHashes.sha256(audio.getAbsolutePath()).substring(0, 8);
+    }
+}
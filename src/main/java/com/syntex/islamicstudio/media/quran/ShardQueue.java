@@ -0,0 +1,221 @@
+package com.syntex.islamicstudio.media.quran;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.syntex.islamicstudio.media.quran.model.ShardTask;
+
+/**
+ * Shared-directory work queue between a render coordinator and worker processes.
+ *
+ * <pre>
+ * root/pending/&lt;id&gt;.json   submitted, waiting for a worker
+ * root/claimed/&lt;id&gt;.json   being rendered; the worker touches it as a heartbeat
+ * root/done/&lt;id&gt;.json      finished, with the written outputs
+ * root/failed/&lt;id&gt;.json    failed, with the error
+ * root/STOP                 no more work will be submitted
+ * </pre>
+ *
+ * Every state change is an atomic rename (or a write to a temp file followed by
+ * one), so any number of processes on one machine, or on hosts sharing a POSIX
+ * file system, can claim work without further locking: exactly one rename of a
+ * pending file succeeds.
+ */
+public class ShardQueue {
+
+    private final File root;
+    private final File pending;
+    private final File claimed;
+    private final File done;
+    private final File failed;
+
+    public ShardQueue(File root) {
+        this.root = root;
+        this.pending = new File(root, "pending");
+        this.claimed = new File(root, "claimed");
+        this.done = new File(root, "done");
+        this.failed = new File(root, "failed");
+        for (File dir : List.of(pending, claimed, done, failed)) dir.mkdirs();
+    }
+
+    public File root() {
+        return root;
+    }
+
+    public void submit(ShardTask task) throws IOException {
+        write(new File(pending, task.id + ".json"), task);
+    }
+
+    /** Claims the oldest pending task, or returns null if there is none. */
+    public ShardTask claim(String workerId) throws IOException {
+        for (File file : sorted(pending)) {
+            File target = new File(claimed, file.getName());
+            try {
+                Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                continue; // another worker got it first
+            }
+            ShardTask task = PipelineManifest.readJson(target, ShardTask.class);
+            task.worker = workerId;
+            write(target, task);
+            return task;
+        }
+        return null;
+    }
+
+    /** Marks a claimed task as alive; see {@link #requeueStale}. */
+    public void heartbeat(ShardTask task) {
+        File file = new File(claimed, task.id + ".json");
+        try {
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // the coordinator requeued it; complete() decides whether the result still counts
+        }
+    }
+
+    /**
+     * Publishes a finished task. Returns false, publishing nothing, if the claim was
+     * requeued and has since been claimed by another worker, whose claim is left alone.
+     */
+    public boolean complete(ShardTask task) throws IOException {
+        if (!holdsClaim(task)) return false;
+        write(new File(done, task.id + ".json"), task);
+        Files.deleteIfExists(new File(claimed, task.id + ".json").toPath());
+        return true;
+    }
+
+    /** Records a failed task; returns false, like {@link #complete}, if the claim is no longer this worker's. */
+    public boolean fail(ShardTask task, Exception error) throws IOException {
+        if (!holdsClaim(task)) return false;
+        task.error = error.getClass().getSimpleName() + ": " + error.getMessage();
+        write(new File(failed, task.id + ".json"), task);
+        Files.deleteIfExists(new File(claimed, task.id + ".json").toPath());
+        return true;
+    }
+
+    /**
+     * Whether {@code task}'s claim still names its worker. A claim that was requeued but
+     * not yet picked up is taken back from pending first, so a slow worker's result is
+     * kept unless someone else is already rendering the task.
+     */
+    private boolean holdsClaim(ShardTask task) throws IOException {
+        File claim = new File(claimed, task.id + ".json");
+        File queued = new File(pending, task.id + ".json");
+        boolean reclaimed = false;
+        if (!claim.exists()) {
+            try {
+                Files.move(queued.toPath(), claim.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                reclaimed = true;
+            } catch (NoSuchFileException e) {
+                return false; // claimed by another worker, or already finished
+            }
+        }
+        ShardTask current;
+        try {
+            current = PipelineManifest.readJson(claim, ShardTask.class);
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        boolean owned = current != null && task.worker != null && task.worker.equals(current.worker);
+        if (!owned && reclaimed) {
+            // A retried copy (no worker yet): put it back for whoever claims it next
+            Files.move(claim.toPath(), queued.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        return owned;
+    }
+
+    /** Moves a failed task back to pending with one more attempt counted. */
+    public void retry(ShardTask task) throws IOException {
+        task.attempts++;
+        task.error = null;
+        task.worker = null;
+        submit(task);
+        Files.deleteIfExists(new File(failed, task.id + ".json").toPath());
+    }
+
+    /** Returns claims whose worker stopped heart-beating to pending; returns how many. */
+    public int requeueStale(long maxAgeMillis) throws IOException {
+        int requeued = 0;
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        for (File file : sorted(claimed)) {
+            if (file.lastModified() >= cutoff) continue;
+            try {
+                Files.move(file.toPath(), new File(pending, file.getName()).toPath(), StandardCopyOption.ATOMIC_MOVE);
+                requeued++;
+            } catch (NoSuchFileException e) {
+                // finished in the meantime
+            }
+        }
+        return requeued;
+    }
+
+    public List<ShardTask> done() throws IOException {
+        return readAll(done);
+    }
+
+    public List<ShardTask> failed() throws IOException {
+        return readAll(failed);
+    }
+
+    public int pendingCount() {
+        return sorted(pending).size();
+    }
+
+    public int claimedCount() {
+        return sorted(claimed).size();
+    }
+
+    public void stop() throws IOException {
+        Files.writeString(new File(root, "STOP").toPath(), "");
+    }
+
+    public boolean isStopped() {
+        return new File(root, "STOP").exists();
+    }
+
+    /** Forgets every task and the STOP marker, for a coordinator reusing a queue directory. */
+    public void reset() throws IOException {
+        for (File dir : List.of(pending, claimed, done, failed)) {
+            for (File file : sorted(dir)) Files.deleteIfExists(file.toPath());
+        }
+        Files.deleteIfExists(new File(root, "STOP").toPath());
+    }
+
+    private List<ShardTask> readAll(File dir) throws IOException {
+        List<ShardTask> tasks = new ArrayList<>();
+        for (File file : sorted(dir)) {
+            try {
+                tasks.add(PipelineManifest.readJson(file, ShardTask.class));
+            } catch (FileNotFoundException e) {
+                // moved while listing
+            }
+        }
+        return tasks;
+    }
+
+    private static List<File> sorted(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".json"));
+        if (files == null) return List.of();
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    private static void write(File file, ShardTask task) throws IOException {
+        File tmp = new File(file.getParentFile(), "." + file.getName() + "." + ProcessHandle.current().pid() + ".tmp");
+        PipelineManifest.writeJson(tmp, task);
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.syntex.islamicstudio.media.quran;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.CardBackend;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.RetentionPolicy;
+import com.syntex.islamicstudio.media.quran.QuranRecitationVideoMaker.VideoProfile;
+import com.syntex.islamicstudio.media.quran.model.ShardTask;
+
+/**
+ * Worker side of the {@link ShardQueue} protocol: claims tasks one at a time and
+ * renders them with {@link QuranRecitationVideoMaker}, until the queue is stopped
+ * and drained.
+ */
+public class ShardWorker {
+
+    /** How often a running task's claim is touched; the coordinator requeues claims older than a few of these. */
+    public static final long HEARTBEAT_MILLIS = 5_000;
+
+    private final ShardQueue queue;
+    private final String workerId;
+
+    public ShardWorker(ShardQueue queue, String workerId) {
+        this.queue = queue;
+        this.workerId = workerId;
+    }
+
+    /** Processes tasks until the queue is stopped and has nothing pending; returns how many were rendered. */
+    public int run() throws Exception {
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        int rendered = 0;
+        try {
+            while (true) {
+                ShardTask task = queue.claim(workerId);
+                if (task == null) {
+                    if (queue.isStopped()) return rendered;
+                    Thread.sleep(500);
+                    continue;
+                }
+
+                System.out.println("🛠 [" + workerId + "] " + task.id);
+                var beat = heartbeat.scheduleAtFixedRate(() -> queue.heartbeat(task),
+                        HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                long start = System.currentTimeMillis();
+                try {
+                    List<File> outputs = execute(task);
+                    task.outputs = new ArrayList<>(outputs.stream().map(File::getPath).toList());
+                    task.millis = System.currentTimeMillis() - start;
+                    if (queue.complete(task)) rendered++;
+                    else System.err.println("⚠ [" + workerId + "] " + task.id + " was reassigned meanwhile; dropping result");
+                } catch (Exception e) {
+                    task.millis = System.currentTimeMillis() - start;
+                    System.err.println("❌ [" + workerId + "] " + task.id + " failed: " + e.getMessage());
+                    if (!queue.fail(task, e)) {
+                        System.err.println("⚠ [" + workerId + "] " + task.id + " was reassigned meanwhile; not recording the failure");
+                    }
+                } finally {
+                    beat.cancel(false);
+                }
+            }
+        } finally {
+            heartbeat.shutdownNow();
+        }
+    }
+
+    private static List<File> execute(ShardTask task) throws Exception {
+        QuranRecitationVideoMaker maker = new QuranRecitationVideoMaker(task.debug);
+        maker.setProfiles(task.profiles.stream().map(VideoProfile::valueOf).toList());
+        if (task.retention != null) maker.setRetention(RetentionPolicy.valueOf(task.retention));
+        if (task.backend != null) maker.setBackend(CardBackend.valueOf(task.backend));
+        maker.setKaraoke(task.karaoke);
+
+        File audio = new File(task.audio);
+        File output = new File(task.output);
+        return switch (task.type) {
+            case VIDEO -> maker.generateVideo(audio, output, task.noBgAudio, task.maxVerses, task.bgVolume);
+            case SEGMENT -> maker.renderSegment(audio, output, task.from, task.to,
+                    task.noBgAudio, task.maxVerses, task.bgVolume);
+        };
+    }
+}
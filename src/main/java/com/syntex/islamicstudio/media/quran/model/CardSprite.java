@@ -0,0 +1,24 @@
+package com.syntex.islamicstudio.media.quran.model;
+
+import java.io.File;
+
+import lombok.Data;
+
+/**
+ * A rendered ayah card cropped to its visible text, or a karaoke highlight of one of
+ * its words, plus where it sits on the frame. The highlights of an ayah share one image,
+ * each word at {@code srcX, srcY} inside it.
+ */
+@Data
+public class CardSprite {
+    public int index;       // transcript index this card belongs to (-1 for a per-ayah card)
+    public int ayahNumber;
+    public int word = -1;   // ayah word index for a karaoke highlight, -1 for the card itself
+    public File file;
+    public int x;
+    public int y;
+    public int width;
+    public int height;
+    public int srcX;        // top-left of the sprite inside its file (karaoke highlights)
+    public int srcY;
+}
@@ -0,0 +1,42 @@
+package com.syntex.islamicstudio.media.quran.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * One unit of work in a {@link com.syntex.islamicstudio.media.quran.ShardQueue}:
+ * a whole recitation video, or one segment of a long one. The render settings
+ * travel with the task so every worker renders exactly what the coordinator planned.
+ */
+@Data
+public class ShardTask {
+
+    public enum Type {
+        VIDEO, SEGMENT
+    }
+
+    public String id;
+    public Type type;
+    public String audio;
+    public String output;
+    public double from;     // SEGMENT only: window on the final timeline, in seconds
+    public double to;
+
+    public List<String> profiles = new ArrayList<>();
+    public boolean noBgAudio;
+    public int maxVerses;
+    public double bgVolume;
+    public boolean debug;
+    public String retention;
+    public String backend;
+    public boolean karaoke;
+    public int attempts;
+
+    // Filled in by the worker
+    public String worker;
+    public List<String> outputs = new ArrayList<>();
+    public long millis;
+    public String error;
+}
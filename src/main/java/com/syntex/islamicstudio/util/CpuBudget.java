@@ -0,0 +1,82 @@
+package com.syntex.islamicstudio.util;
+
+/**
+ * Splits the machine's cores between Java rendering ({@link RenderPool}) and
+ * ffmpeg encodes, based on which of them is currently running.
+ *
+ * Stages take a {@link Lease} for as long as they run. While only one kind of
+ * work is active it gets every core; when card rendering and an encode overlap
+ * (background transcodes run alongside card rendering) each side gets half,
+ * and concurrent encodes share the encoder half. The render pool is resized
+ * immediately; an encoder's thread count is fixed when its lease is taken.
+ */
+public final class CpuBudget {
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    private static int renders;
+    private static int encodes;
+
+    private CpuBudget() {
+    }
+
+    public static Lease render() {
+        synchronized (CpuBudget.class) {
+            renders++;
+            rebalance();
+            return new Lease(true, renderThreads());
+        }
+    }
+
+    public static Lease encode() {
+        synchronized (CpuBudget.class) {
+            encodes++;
+            rebalance();
+            return new Lease(false, encoderThreads());
+        }
+    }
+
+    /** Threads for one ffmpeg encode right now. */
+    public static synchronized int encoderThreads() {
+        int share = renders > 0 ? Math.max(1, CORES / 2) : CORES;
+        return Math.max(1, share / Math.max(1, encodes));
+    }
+
+    /** Threads the render pool should run with right now. */
+    public static synchronized int renderThreads() {
+        return encodes > 0 ? Math.max(1, CORES - CORES / 2) : CORES;
+    }
+
+    private static void rebalance() {
+        RenderPool.shared().setThreads(renderThreads());
+    }
+
+    /** A running stage's claim on the budget; close it when the stage ends. */
+    public static final class Lease implements AutoCloseable {
+
+        private final boolean render;
+        private final int threads;
+        private boolean closed;
+
+        private Lease(boolean render, int threads) {
+            this.render = render;
+            this.threads = threads;
+        }
+
+        /** Threads this stage was granted when the lease was taken. */
+        public int threads() {
+            return threads;
+        }
+
+        @Override
+        public void close() {
+            synchronized (CpuBudget.class) {
+                if (closed) return;
+                closed = true;
+                if (render) renders--;
+                else encodes--;
+                rebalance();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.syntex.islamicstudio.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SHA-256 content hashes for cache keys.
+ *
+ * Hashes are memoized per (path, size, mtime), so asking for the hash of the
+ * same unchanged file twice only reads it once per JVM.
+ */
+public final class FileHashes {
+
+    private static final Map<String, Memo> MEMO = new ConcurrentHashMap<>();
+
+    private FileHashes() {
+    }
+
+    /** Full lowercase hex SHA-256 of the file contents. */
+    public static String sha256(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long size = file.length();
+        long modified = file.lastModified();
+
+        Memo memo = MEMO.get(path);
+        if (memo != null && memo.size == size && memo.modified == modified) return memo.hash;
+
+        MessageDigest digest = newDigest();
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buf)) > 0) digest.update(buf, 0, n);
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        MEMO.put(path, new Memo(size, modified, hash));
+        return hash;
+    }
+
+    /** First 16 hex chars of {@link #sha256(File)}; enough to name cache entries. */
+    public static String shortHash(File file) throws IOException {
+        return sha256(file).substring(0, 16);
+    }
+
+    /** SHA-256 of a string, for hashing derived inputs (settings, text, ...). */
+    public static String sha256(String text) {
+        MessageDigest digest = newDigest();
+        return HexFormat.of().formatHex(digest.digest(text.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Memo(long size, long modified, String hash) {
+    }
+}
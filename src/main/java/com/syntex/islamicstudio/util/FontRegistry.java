@@ -0,0 +1,84 @@
+package com.syntex.islamicstudio.util;
+
+import java.awt.Font;
+import java.awt.GraphicsEnvironment;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fonts for all renderers, created once per JVM.
+ *
+ * The bundled Qur'an fonts are parsed from resources on first use and
+ * registered with the graphics environment, so their family names also work
+ * in {@code new Font(family, ...)}.
+ * Every (family, style, size) a renderer asks for is derived once and then
+ * shared; {@link Font} is immutable, so the instances are safe to use from any
+ * render thread, and equal instances keep {@link TextLayoutCache} keys cheap.
+ */
+public final class FontRegistry {
+
+    public static final String AL_QALAM = "/fonts/Al Qalam Quran.ttf";
+    public static final String AL_MUSHAF = "/fonts/Al Mushaf Quran.ttf";
+
+    private static final Map<String, Font> BUNDLED = new ConcurrentHashMap<>();
+    private static final Map<Key, Font> DERIVED = new ConcurrentHashMap<>();
+
+    private FontRegistry() {
+    }
+
+    /** The Qur'an font used for Arabic text on cards. */
+    public static Font quran(float size) {
+        return derive(bundled(AL_QALAM), Font.PLAIN, size);
+    }
+
+    /** A logical or installed font family ("Serif", "SansSerif", "Monospaced", ...). */
+    public static Font font(String family, int style, float size) {
+        return DERIVED.computeIfAbsent(new Key(family, style, size), k -> {
+            Font base = new Font(family, style, Math.max(1, Math.round(size)));
+            return base.getSize2D() == size ? base : base.deriveFont(size);
+        });
+    }
+
+    /** {@code base} at another size, keeping its style. */
+    public static Font derive(Font base, float size) {
+        return derive(base, base.getStyle(), size);
+    }
+
+    /** {@code base} at another style and size. */
+    public static Font derive(Font base, int style, float size) {
+        if (base.getStyle() == style && base.getSize2D() == size) return base;
+        return DERIVED.computeIfAbsent(new Key(base.getName(), style, size), k -> base.deriveFont(style, size));
+    }
+
+    /**
+     * A bundled TrueType font at size 1, parsed and registered once. A missing or
+     * broken resource falls back to Serif with a warning rather than failing the render.
+     */
+    public static Font bundled(String resource) {
+        return BUNDLED.computeIfAbsent(resource, FontRegistry::load);
+    }
+
+    /** Number of distinct derived fonts held; for benchmarks. */
+    public static int size() {
+        return DERIVED.size();
+    }
+
+    private static Font load(String resource) {
+        try (InputStream is = FontRegistry.class.getResourceAsStream(resource)) {
+            if (is == null) {
+                System.err.println("⚠ Font not found in resources: " + resource + ", using Serif fallback.");
+                return new Font("Serif", Font.PLAIN, 1);
+            }
+            Font font = Font.createFont(Font.TRUETYPE_FONT, is).deriveFont(1f);
+            GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(font);
+            return font;
+        } catch (Exception e) {
+            System.err.println("⚠ Failed to load font " + resource + ": " + e.getMessage() + ", using Serif fallback.");
+            return new Font("Serif", Font.PLAIN, 1);
+        }
+    }
+
+    private record Key(String family, int style, float size) {
+    }
+}
@@ -2,28 +2,101 @@ package com.syntex.islamicstudio.util;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GradientPaint;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.MultipleGradientPaint.CycleMethod;
 import java.awt.RadialGradientPaint;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Shape;
-import java.awt.font.LineBreakMeasurer;
-import java.awt.font.TextAttribute;
+import java.awt.TexturePaint;
+import java.awt.font.FontRenderContext;
 import java.awt.font.TextLayout;
 import java.awt.geom.RoundRectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
-import java.security.SecureRandom;
-import java.text.AttributedCharacterIterator;
-import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
 
-import javax.imageio.ImageIO;
+import com.syntex.islamicstudio.util.image.BackgroundImageService;
+import com.syntex.islamicstudio.util.image.ImageFormat;
 
 public class HadithImageGenerator {
 
+    private static final int OUTER_PADDING = 56;
+    private static final float CARD_RADIUS = 40f;
+    private static final int INNER_PADDING = 44;
+    private static final int IMAGE_RADIUS = 28;
+
+    /** Rendered static layers per (theme, size); a handful of export sizes at most. */
+    private static final Map<TemplateKey, BufferedImage> TEMPLATES = new HashMap<>();
+
+    /** Colours of a card style. */
+    public record Theme(Color background, Color gradientTop, Color gradientBottom,
+                        Color card, Color cardBorder,
+                        Color accent, Color accentDeep, Color softText, Color mutedText) {
+
+        public static final Theme DARK = new Theme(
+                new Color(14, 14, 18), new Color(22, 22, 28), new Color(10, 10, 14),
+                new Color(24, 24, 30), new Color(255, 255, 255, 28),
+                new Color(255, 215, 0), new Color(210, 170, 0),
+                new Color(235, 235, 240), new Color(180, 182, 190));
+    }
+
+    private record TemplateKey(Theme theme, int width, int height) {
+    }
+
+    private static final int NOISE_TILE_SIZE = 256;
+    private static final long NOISE_SEED = 0x5EED_6A11L;
+    private static final Map<NoiseKey, BufferedImage> NOISE_TILES = new HashMap<>();
+
+    private record NoiseKey(int intensity, float opacity) {
+    }
+
+    /** Export shapes; all share the 1080px width, so text wraps the same way on each. */
+    public enum CardFormat {
+        FEED(1080, 1350, 0.42, ""),
+        STORY(1080, 1920, 0.42, "_story"),
+        SQUARE(1080, 1080, 0.26, "_square");
+
+        public final int width;
+        public final int height;
+        /** Share of the card's height given to the photo. */
+        final double imageShare;
+        /** Appended to the output name; the feed card keeps the name as given. */
+        public final String suffix;
+
+        CardFormat(int width, int height, double imageShare, String suffix) {
+            this.width = width;
+            this.height = height;
+            this.imageShare = imageShare;
+            this.suffix = suffix;
+        }
+
+        int cardW() {
+            return width - 2 * OUTER_PADDING;
+        }
+
+        int cardH() {
+            return height - 2 * OUTER_PADDING;
+        }
+
+        int contentW() {
+            return cardW() - INNER_PADDING * 2;
+        }
+
+        int imageH() {
+            return (int) Math.round(cardH() * imageShare);
+        }
+    }
+
     /**
      * Renders a portrait (4:5) hadith card without Arabic: title, book line, narrator, English body, footer chips.
      */
@@ -33,6 +106,24 @@ public class HadithImageGenerator {
             String number, String grade, String narrator,
             String english,
             String outputName) throws Exception {
+        generateHadithImages(background, collection, bookEn, bookAr, number, grade, narrator, english,
+                outputName, List.of(CardFormat.FEED));
+    }
+
+    /**
+     * Renders the card in each of {@code formats} in one pass: the photo is decoded once
+     * for all of them, the title, book line and narrator are fitted once (they only depend
+     * on the shared width), and the formats render concurrently on the {@link RenderPool}.
+     * Must not be called from a render pool thread. Returns the written files in the order
+     * of {@code formats}; each is {@code outputName} with the format's suffix before the
+     * extension.
+     */
+    public static List<File> generateHadithImages(
+            File background,
+            String collection, String bookEn, String bookAr,
+            String number, String grade, String narrator,
+            String english,
+            String outputName, List<CardFormat> formats) throws Exception {
 
         // Normalize
         collection = normalizeInline(collection);
@@ -43,83 +134,99 @@ public class HadithImageGenerator {
         narrator = normalizeInline(narrator);
         english = normalizeInline(english);
 
-        // Canvas (4:5 for Instagram portrait)
-        int exportWidth = 1080;
-        int exportHeight = 1350;
-        BufferedImage canvas = new BufferedImage(exportWidth, exportHeight, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = canvas.createGraphics();
+        // Top image areas (cover, rounded), from a single decode
+        List<Dimension> boxes = new ArrayList<>();
+        for (CardFormat format : formats) boxes.add(new Dimension(format.contentW(), format.imageH()));
+        List<BufferedImage> photos = BackgroundImageService.coverAll(background, boxes, IMAGE_RADIUS);
 
-        // High quality
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-        g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        // Width-only fits are the same for every format
+        int contentW = CardFormat.FEED.contentW();
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D mg = scratch.createGraphics();
+        applyQualityHints(mg);
+        FontRenderContext frc = mg.getFontRenderContext();
 
-        // Theme
-        Color bgDark = new Color(14, 14, 18);
-        Color cardDark = new Color(24, 24, 30);
-        Color cardBorder = new Color(255, 255, 255, 28);
-        Color accent = new Color(255, 215, 0);
-        Color accentDeep = new Color(210, 170, 0);
-        Color softText = new Color(235, 235, 240);
-        Color mutedText = new Color(180, 182, 190);
+        // Title dynamic sizing (bigger baseline since there is no Arabic)
+        int titleMaxLines = 2;
+        int titleMaxHeight = approxLineHeight(mg, FontRegistry.font("Serif", Font.BOLD, 56)) * titleMaxLines + 6;
+        mg.dispose();
+        TextFitEngine.Fit title = fitTextHeight(collection, FontRegistry.font("Serif", Font.BOLD, 56), 28,
+                contentW, titleMaxHeight, frc);
 
-        // Background richness
-        g.setColor(bgDark);
-        g.fillRect(0, 0, exportWidth, exportHeight);
-        paintBackgroundGradient(g, exportWidth, exportHeight, new Color(22, 22, 28), new Color(10, 10, 14));
-        paintVignette(g, exportWidth, exportHeight, 120);
-        paintNoise(g, exportWidth, exportHeight, 9, 0.03f);
+        // Book line fit-to-width
+        String bookLine = bookEn + " (" + bookAr + ")";
+        TextFitEngine.Fit book = TextFitEngine.fitWidth(bookLine, FontRegistry.font("Serif", Font.ITALIC, 30), 18, contentW, frc);
 
-        // Card
-        int outerPadding = 56;
-        int cardX = outerPadding;
-        int cardY = outerPadding;
-        int cardW = exportWidth - 2 * outerPadding;
-        int cardH = exportHeight - 2 * outerPadding;
+        // Narrator (a bit larger)
+        String narratorLine = "Narrated by: " + nullSafe(narrator);
+        TextFitEngine.Fit narratorFit = TextFitEngine.fitWidth(narratorLine, FontRegistry.font("SansSerif", Font.BOLD, 30), 18,
+                contentW, frc);
 
-        float cardRadius = 40f;
-        Shape cardShape = new RoundRectangle2D.Float(cardX, cardY, cardW, cardH, cardRadius, cardRadius);
+        Content content = new Content(title, book, narratorFit, english, nullSafe(number), nullSafe(grade));
 
-        paintGlow(g, (int) (cardX + cardW * 0.5), cardY + 100, 380, new Color(255, 215, 0, 22));
-        paintGlow(g, (int) (cardX + cardW * 0.5), cardY + cardH - 100, 420, new Color(0, 0, 0, 90));
+        List<Callable<File>> tasks = new ArrayList<>();
+        for (int i = 0; i < formats.size(); i++) {
+            CardFormat format = formats.get(i);
+            BufferedImage photo = photos.get(i);
+            File out = new File("output/" + withSuffix(outputName, format.suffix));
+            tasks.add(() -> renderCard(Theme.DARK, format, photo, content, out));
+        }
+        List<File> written = RenderPool.shared().runAll(tasks);
+        for (File out : written) System.out.println("✅ Saved hadith image: " + out.getAbsolutePath());
+        return written;
+    }
 
-        g.setColor(cardDark);
-        g.fill(cardShape);
-        g.setColor(cardBorder);
-        g.setStroke(new BasicStroke(2f));
-        g.draw(cardShape);
-        drawInnerGradient(g, cardShape, new Color(255, 255, 255, 16), new Color(0, 0, 0, 0));
+    /** What is shared between the formats of one card. */
+    private record Content(TextFitEngine.Fit title, TextFitEngine.Fit book, TextFitEngine.Fit narrator,
+                           String english, String number, String grade) {
+    }
+
+    private static File renderCard(Theme theme, CardFormat format, BufferedImage photo, Content content, File out)
+            throws Exception {
+        // Canvas, starting from the theme's static layers
+        int exportWidth = format.width;
+        int exportHeight = format.height;
+        BufferedImage canvas = CanvasPool.acquire(exportWidth, exportHeight, BufferedImage.TYPE_INT_RGB);
+        try {
+            template(theme, exportWidth, exportHeight).copyData(canvas.getRaster());
+            Graphics2D g = canvas.createGraphics();
+            applyQualityHints(g);
+            drawContent(g, theme, format, photo, content);
+            g.dispose();
+
+            // Export
+            ImageFormat.export().write(canvas, out);
+            return out;
+        } finally {
+            CanvasPool.release(canvas);
+        }
+    }
+
+    private static void drawContent(Graphics2D g, Theme theme, CardFormat format, BufferedImage photo, Content content) {
+        Color accent = theme.accent();
+        Color accentDeep = theme.accentDeep();
+        Color softText = theme.softText();
+        Color mutedText = theme.mutedText();
+
+        // Card
+        int cardX = OUTER_PADDING;
+        int cardY = OUTER_PADDING;
+        int cardH = format.cardH();
 
         // Layout bounds
-        int innerPadding = 44;
-        int contentX = cardX + innerPadding;
-        int contentY = cardY + innerPadding;
-        int contentW = cardW - innerPadding * 2;
-        int contentBottom = cardY + cardH - innerPadding; // safe bottom for content (above chips)
+        int contentX = cardX + INNER_PADDING;
+        int contentY = cardY + INNER_PADDING;
+        int contentW = format.contentW();
+        int contentBottom = cardY + cardH - INNER_PADDING; // safe bottom for content (above chips)
         int y = contentY;
 
         // Top image area (cover, rounded)
-        BufferedImage bg = ImageIO.read(background);
-        if (bg == null) throw new IllegalStateException("Could not load background image: " + background);
-
-        int imageAreaHeight = (int) Math.round(cardH * 0.42); // slightly shorter to give text more space
-        int imageRadius = 28;
         int boxW = contentW;
-        int boxH = imageAreaHeight;
-
-        double srcW = bg.getWidth();
-        double srcH = bg.getHeight();
-        double scale = Math.max((double) boxW / srcW, (double) boxH / srcH);
-        int drawW = (int) Math.ceil(srcW * scale);
-        int drawH = (int) Math.ceil(srcH * scale);
-        int dx = contentX + (boxW - drawW) / 2;
-        int dy = y + (boxH - drawH) / 2;
+        int boxH = format.imageH();
 
-        Shape imageClip = new RoundRectangle2D.Float(contentX, y, boxW, boxH, imageRadius, imageRadius);
+        g.drawImage(photo, contentX, y, null);
+        Shape imageClip = new RoundRectangle2D.Float(contentX, y, boxW, boxH, IMAGE_RADIUS, IMAGE_RADIUS);
         g.setClip(imageClip);
-        g.drawImage(bg.getScaledInstance(drawW, drawH, Image.SCALE_SMOOTH), dx, dy, null);
 
         // Enrich overlays
         GradientPaint duo = new GradientPaint(contentX, y, new Color(accent.getRed(), accent.getGreen(), accent.getBlue(), 32),
@@ -135,45 +242,27 @@ public class HadithImageGenerator {
         g.setClip(null);
         g.setColor(new Color(255, 255, 255, 34));
         g.setStroke(new BasicStroke(1.5f));
-        g.draw(new RoundRectangle2D.Float(contentX + 0.75f, y + 0.75f, boxW - 1.5f, boxH - 1.5f, imageRadius, imageRadius));
+        g.draw(new RoundRectangle2D.Float(contentX + 0.75f, y + 0.75f, boxW - 1.5f, boxH - 1.5f, IMAGE_RADIUS, IMAGE_RADIUS));
 
         y += boxH;
         y += 28;
 
-        // Title dynamic sizing (bigger baseline since there is no Arabic)
-        int titleMaxLines = 2;
-        int titleMaxHeight = approxLineHeight(g, new Font("Serif", Font.BOLD, 56)) * titleMaxLines + 6;
-        Font titleFont = fitTextHeight(collection, new Font("Serif", Font.BOLD, 56), new Font("Serif", Font.BOLD, 28),
-                contentW, titleMaxHeight, g, false);
-        g.setFont(titleFont);
-
-        int titleHeight = measureWrappedHeight(collection, g.getFont(), contentW, g, false);
         int titleTop = y;
-        y = drawWrappedTextLTR(g, collection, contentX, y, contentW, softText);
+        y = drawWrappedTextLTR(g, content.title().lines(), contentX, y, softText);
 
         // Accent bar just below the last title line
-        int barY = Math.max(titleTop + 6, titleTop + titleHeight - 10);
+        int barY = Math.max(titleTop + 6, titleTop + content.title().height() - 10);
         drawAccentBar(g, contentX, barY, Math.min(200, contentW / 3), accent, accentDeep);
         y += 12;
 
-        // Book line fit-to-width
-        String bookLine = bookEn + " (" + bookAr + ")";
-        Font bookFont = fitTextWidth(bookLine, new Font("Serif", Font.ITALIC, 30), new Font("Serif", Font.ITALIC, 18),
-                contentW, g);
-        g.setFont(bookFont);
-        y = drawWrappedTextLTR(g, bookLine, contentX, y, contentW, mutedText);
+        y = drawWrappedTextLTR(g, content.book().lines(), contentX, y, mutedText);
         y += 22;
 
         // Separator
         drawSeparator(g, contentX, y, contentW, new Color(255, 255, 255, 28));
         y += 24;
 
-        // Narrator (a bit larger)
-        String narratorLine = "Narrated by: " + nullSafe(narrator);
-        Font narratorFont = fitTextWidth(narratorLine, new Font("SansSerif", Font.BOLD, 30), new Font("SansSerif", Font.BOLD, 18),
-                contentW, g);
-        g.setFont(narratorFont);
-        y = drawWrappedTextLTR(g, narratorLine, contentX, y, contentW, softText);
+        y = drawWrappedTextLTR(g, content.narrator().lines(), contentX, y, softText);
         y += 18;
 
         // English paragraph: generous space and conservative downscaling
@@ -182,9 +271,9 @@ public class HadithImageGenerator {
         int maxTextBottom = contentBottom - chipBlockHeight - safeGapAboveChips;
 
         int availableForEnglish = Math.max(240, maxTextBottom - y);
-        int engFontSize = fitParagraphToHeight(english, 32, 18, contentW, availableForEnglish, g);
-        g.setFont(new Font("Serif", Font.ITALIC, engFontSize));
-        y = drawWrappedTextLTR(g, english, contentX, y, contentW, new Color(230, 230, 236));
+        TextFitEngine.Fit body = TextFitEngine.fitHeight(content.english(), FontRegistry.font("Serif", Font.ITALIC, 32), 18,
+                contentW, availableForEnglish, false, g.getFontRenderContext());
+        y = drawWrappedTextLTR(g, body.lines(), contentX, y, new Color(230, 230, 236));
 
         // Clamp to safe area
         y = Math.min(y, maxTextBottom);
@@ -197,8 +286,8 @@ public class HadithImageGenerator {
 
         // Footer chips
         int chipY = contentBottom - 8;
-        String chip1 = "Hadith #" + nullSafe(number);
-        String chip2 = nullSafe(grade);
+        String chip1 = "Hadith #" + content.number();
+        String chip2 = content.grade();
 
         int usedChipFont = 22;
         int minChipFont = 18;
@@ -213,7 +302,7 @@ public class HadithImageGenerator {
             usedChipFont -= 2;
         }
 
-        Font chipF = new Font("SansSerif", Font.BOLD, usedChipFont);
+        Font chipF = FontRegistry.font("SansSerif", Font.BOLD, usedChipFont);
         g.setFont(chipF);
         int[] widths = chipWidths(g, chip1, chip2, usedChipFont, chipPaddingX);
         int chipH = g.getFontMetrics().getAscent() + g.getFontMetrics().getDescent() + chipPaddingY * 2;
@@ -230,103 +319,93 @@ public class HadithImageGenerator {
                 new Color(255, 255, 255, 16), new Color(255, 255, 255, 40),
                 new Color(255, 255, 255, 60), softText);
         drawStringCenteredVertically(g, chip2, chip2X + chipPaddingX, chipY - chipH, chipH, softText);
+    }
 
-        g.dispose();
-
-        // Export
-        File out = new File("output/" + outputName);
-        out.getParentFile().mkdirs();
-        ImageIO.write(toOpaque(canvas, bgDark), "png", out);
-        System.out.println("✅ Saved hadith image: " + out.getAbsolutePath());
+    private static String withSuffix(String name, String suffix) {
+        if (suffix.isEmpty()) return name;
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) + suffix + name.substring(dot) : name + suffix;
     }
 
-    // ========= MEASUREMENT & FITTING =========
+    // ========= STATIC LAYERS =========
 
-    private static int measureWrappedHeight(String text, Font font, int maxWidth, Graphics2D g, boolean rtl) {
-        if (text == null || text.isBlank()) return 0;
-        AttributedString a = new AttributedString(text);
-        a.addAttribute(TextAttribute.FONT, font);
-        if (rtl) a.addAttribute(TextAttribute.RUN_DIRECTION, TextAttribute.RUN_DIRECTION_RTL);
-        AttributedCharacterIterator it = a.getIterator();
-        LineBreakMeasurer lbm = new LineBreakMeasurer(it, g.getFontRenderContext());
-        int h = 0;
-        while (lbm.getPosition() < it.getEndIndex()) {
-            TextLayout layout = lbm.nextLayout(maxWidth);
-            h += layout.getAscent() + layout.getDescent() + layout.getLeading();
+    /**
+     * The layers under the content: background gradient, vignette, grain, glows
+     * and the empty card. They depend only on the theme and the canvas size, so
+     * they are painted once into an opaque template that every card copies.
+     */
+    private static BufferedImage template(Theme theme, int width, int height) {
+        synchronized (TEMPLATES) {
+            return TEMPLATES.computeIfAbsent(new TemplateKey(theme, width, height), k -> paintTemplate(theme, width, height));
         }
-        return h;
     }
 
-    private static int approxLineHeight(Graphics2D g, Font f) {
-        var fm = g.getFontMetrics(f);
-        return fm.getAscent() + fm.getDescent() + fm.getLeading();
-    }
+    private static BufferedImage paintTemplate(Theme theme, int width, int height) {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        applyQualityHints(g);
 
-    private static Font fitTextWidth(String text, Font start, Font min, int maxWidth, Graphics2D g) {
-        if (text == null || text.isBlank()) return start;
-        int size = start.getSize();
-        int minSize = Math.max(min.getSize(), 8);
-        for (; size >= minSize; size--) {
-            Font f = start.deriveFont((float) size);
-            if (!wrapExceedsWidth(text, f, maxWidth, g)) return f;
-        }
-        return min.deriveFont((float) minSize);
-    }
+        // Background richness
+        g.setColor(theme.background());
+        g.fillRect(0, 0, width, height);
+        paintBackgroundGradient(g, width, height, theme.gradientTop(), theme.gradientBottom());
+        paintVignette(g, width, height, 120);
+        paintNoise(g, width, height, 9, 0.03f);
 
-    private static Font fitTextHeight(String text, Font start, Font min, int maxWidth, int maxHeight, Graphics2D g, boolean rtl) {
-        int size = start.getSize();
-        int minSize = Math.max(min.getSize(), 8);
-        for (; size >= minSize; size--) {
-            Font f = start.deriveFont((float) size);
-            int h = measureWrappedHeight(text, f, maxWidth, g, rtl);
-            if (h <= maxHeight) return f;
-        }
-        return min.deriveFont((float) minSize).deriveFont(Font.PLAIN, (float) (minSize * 0.8));
+        // Card
+        int cardX = OUTER_PADDING;
+        int cardY = OUTER_PADDING;
+        int cardW = width - 2 * OUTER_PADDING;
+        int cardH = height - 2 * OUTER_PADDING;
+        Shape cardShape = new RoundRectangle2D.Float(cardX, cardY, cardW, cardH, CARD_RADIUS, CARD_RADIUS);
+
+        paintGlow(g, (int) (cardX + cardW * 0.5), cardY + 100, 380, new Color(255, 215, 0, 22));
+        paintGlow(g, (int) (cardX + cardW * 0.5), cardY + cardH - 100, 420, new Color(0, 0, 0, 90));
+
+        g.setColor(theme.card());
+        g.fill(cardShape);
+        g.setColor(theme.cardBorder());
+        g.setStroke(new BasicStroke(2f));
+        g.draw(cardShape);
+        drawInnerGradient(g, cardShape, new Color(255, 255, 255, 16), new Color(0, 0, 0, 0));
+
+        g.dispose();
+        return img;
     }
 
-    private static int fitParagraphToHeight(String text, int startSize, int minSize, int maxWidth, int maxHeight, Graphics2D g) {
-        int s = startSize;
-        for (; s >= minSize; s -= 2) {
-            if (!textTooTall(text, maxWidth, s, g, maxHeight)) break;
-        }
-        return Math.max(s, minSize);
+    private static void applyQualityHints(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
     }
 
-    private static boolean wrapExceedsWidth(String text, Font font, int maxWidth, Graphics2D g) {
-        AttributedString a = new AttributedString(text);
-        a.addAttribute(TextAttribute.FONT, font);
-        AttributedCharacterIterator it = a.getIterator();
-        LineBreakMeasurer lbm = new LineBreakMeasurer(it, g.getFontRenderContext());
-        while (lbm.getPosition() < it.getEndIndex()) {
-            TextLayout layout = lbm.nextLayout(maxWidth);
-            if (layout.getAdvance() > maxWidth + 0.5f) return true;
-        }
-        return false;
+    // ========= MEASUREMENT & FITTING =========
+
+    private static int approxLineHeight(Graphics2D g, Font f) {
+        var fm = g.getFontMetrics(f);
+        return fm.getAscent() + fm.getDescent() + fm.getLeading();
     }
 
-    private static boolean textTooTall(String text, int maxWidth, int fontSize, Graphics2D g, int maxHeight) {
-        if (text == null) text = "";
-        AttributedString attrStr = new AttributedString(text);
-        attrStr.addAttribute(TextAttribute.FONT, new Font("Serif", Font.PLAIN, fontSize));
-        AttributedCharacterIterator it = attrStr.getIterator();
-        LineBreakMeasurer lbm = new LineBreakMeasurer(it, g.getFontRenderContext());
-        int height = 0;
-        while (lbm.getPosition() < it.getEndIndex()) {
-            TextLayout layout = lbm.nextLayout(maxWidth);
-            height += layout.getAscent() + layout.getDescent() + layout.getLeading();
-            if (height > maxHeight) return true;
-        }
-        return false;
+    /** Fits the height; text too tall even at {@code minSize} falls back to a plain font at 80% of it. */
+    private static TextFitEngine.Fit fitTextHeight(String text, Font start, int minSize, int maxWidth, int maxHeight,
+                                                   FontRenderContext frc) {
+        TextFitEngine.Fit fit = TextFitEngine.fitHeight(text, start, Math.max(minSize, 8), maxWidth, maxHeight, false, frc);
+        if (fit.fits()) return fit;
+        Font fallback = FontRegistry.derive(start, Font.PLAIN, (float) (Math.max(minSize, 8) * 0.8));
+        List<TextLayout> lines = TextLayoutCache.layout(text, fallback, maxWidth, false, frc);
+        return new TextFitEngine.Fit(fallback, lines, TextLayoutCache.height(lines), false);
     }
 
     private static int measureChipBlockHeight(Graphics2D g, int chipFontSize, int chipPaddingY) {
-        Font f = new Font("SansSerif", Font.BOLD, chipFontSize);
+        Font f = FontRegistry.font("SansSerif", Font.BOLD, chipFontSize);
         var fm = g.getFontMetrics(f);
         return fm.getAscent() + fm.getDescent() + chipPaddingY * 2 + 8;
     }
 
     private static int[] chipWidths(Graphics2D g, String c1, String c2, int chipFontSize, int paddingX) {
-        Font f = new Font("SansSerif", Font.BOLD, chipFontSize);
+        Font f = FontRegistry.font("SansSerif", Font.BOLD, chipFontSize);
         var fm = g.getFontMetrics(f);
         int w1 = fm.stringWidth(c1) + paddingX * 2;
         int w2 = fm.stringWidth(c2) + paddingX * 2;
@@ -370,13 +449,32 @@ public class HadithImageGenerator {
         g.fillOval(cx - radius, cy - radius, radius * 2, radius * 2);
     }
 
+    /**
+     * Sparse light and dark specks over the whole canvas, {@code opacity * 2%} of the
+     * pixels each, tiled from a seeded texture so the grain is the same on every render.
+     */
     private static void paintNoise(Graphics2D g, int w, int h, int intensity, float opacity) {
-        SecureRandom rng = new SecureRandom();
-        int count = (int) (w * h * opacity * 0.02);
-        g.setColor(new Color(255, 255, 255, intensity));
-        for (int i = 0; i < count; i++) g.fillRect(rng.nextInt(w), rng.nextInt(h), 1, 1);
-        g.setColor(new Color(0, 0, 0, intensity));
-        for (int i = 0; i < count; i++) g.fillRect(rng.nextInt(w), rng.nextInt(h), 1, 1);
+        BufferedImage tile = noiseTile(intensity, opacity);
+        g.setPaint(new TexturePaint(tile, new Rectangle(0, 0, tile.getWidth(), tile.getHeight())));
+        g.fillRect(0, 0, w, h);
+    }
+
+    private static BufferedImage noiseTile(int intensity, float opacity) {
+        synchronized (NOISE_TILES) {
+            return NOISE_TILES.computeIfAbsent(new NoiseKey(intensity, opacity), k -> {
+                BufferedImage tile = new BufferedImage(NOISE_TILE_SIZE, NOISE_TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+                int[] px = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+                int alpha = Math.max(0, Math.min(255, intensity)) << 24;
+                double p = opacity * 0.02;
+                SplittableRandom rng = new SplittableRandom(NOISE_SEED);
+                for (int i = 0; i < px.length; i++) {
+                    double r = rng.nextDouble();
+                    if (r < p) px[i] = alpha | 0xFFFFFF;
+                    else if (r < 2 * p) px[i] = alpha;
+                }
+                return tile;
+            });
+        }
     }
 
     private static void drawInnerGradient(Graphics2D g, Shape shape, Color inner, Color outer) {
@@ -426,29 +524,10 @@ public class HadithImageGenerator {
         g.drawString(text, x, baseline);
     }
 
-    private static BufferedImage toOpaque(BufferedImage src, Color bg) {
-        if (src.getType() == BufferedImage.TYPE_INT_RGB) return src;
-        BufferedImage out = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2 = out.createGraphics();
-        g2.setColor(bg);
-        g2.fillRect(0, 0, out.getWidth(), out.getHeight());
-        g2.drawImage(src, 0, 0, null);
-        g2.dispose();
-        return out;
-    }
-
     // ========= TEXT DRAWING =========
 
-    private static int drawWrappedTextLTR(Graphics2D g, String text, int x, int y, int maxWidth, Color color) {
-        if (text == null || text.isBlank()) return y;
-        AttributedString attrStr = new AttributedString(text);
-        attrStr.addAttribute(TextAttribute.FONT, g.getFont());
-        AttributedCharacterIterator it = attrStr.getIterator();
-        LineBreakMeasurer lbm = new LineBreakMeasurer(it, g.getFontRenderContext());
-
-        g.setColor(color);
-        while (lbm.getPosition() < it.getEndIndex()) {
-            TextLayout layout = lbm.nextLayout(maxWidth);
+    private static int drawWrappedTextLTR(Graphics2D g, List<TextLayout> lines, int x, int y, Color color) {
+        for (TextLayout layout : lines) {
             y += layout.getAscent();
             g.setColor(new Color(0, 0, 0, 140));
             layout.draw(g, x + 1, y + 1);
@@ -458,4 +537,4 @@ public class HadithImageGenerator {
         }
         return y;
     }
-}
\ No newline at end of file
+}
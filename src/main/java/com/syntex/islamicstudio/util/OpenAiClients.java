@@ -0,0 +1,24 @@
+package com.syntex.islamicstudio.util;
+
+import com.openai.client.OpenAIClient;
+import com.openai.client.okhttp.OpenAIOkHttpClient;
+
+/**
+ * One OpenAI client per JVM, created from the environment on first use.
+ *
+ * The client owns an HTTP connection pool and dispatcher threads, so every
+ * transcriber, suggester and batch job shares this one instead of building
+ * its own.
+ */
+public final class OpenAiClients {
+
+    private static OpenAIClient shared;
+
+    private OpenAiClients() {
+    }
+
+    public static synchronized OpenAIClient shared() {
+        if (shared == null) shared = OpenAIOkHttpClient.fromEnv();
+        return shared;
+    }
+}
@@ -0,0 +1,136 @@
+package com.syntex.islamicstudio.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Long-lived executor for CPU-bound Java2D rendering, shared by every renderer.
+ *
+ * Submissions pass through a bounded in-flight window: once {@link #window()}
+ * tasks are queued or running, {@link #submit} blocks until one finishes. That
+ * keeps the number of live canvases constant instead of scaling with the
+ * number of frames. Threads are daemons, so the pool never keeps the JVM alive.
+ */
+public final class RenderPool {
+
+    private static final RenderPool SHARED = new RenderPool(Runtime.getRuntime().availableProcessors());
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore inFlight;
+    private final int window;
+
+    private RenderPool(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "render-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.window = threads + Math.max(1, threads / 2);
+        this.inFlight = new Semaphore(window);
+    }
+
+    public static RenderPool shared() {
+        return SHARED;
+    }
+
+    public int threads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Resizes the pool (see {@link CpuBudget}). Shrinking lets running tasks finish;
+     * the in-flight window stays as it is.
+     */
+    public synchronized void setThreads(int threads) {
+        threads = Math.max(1, threads);
+        if (threads == executor.getMaximumPoolSize()) return;
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /** Maximum number of tasks queued or running at once. */
+    public int window() {
+        return window;
+    }
+
+    /** Submits a task, blocking while the in-flight window is full. */
+    public <T> Future<T> submit(Callable<T> task) throws InterruptedException {
+        inFlight.acquire();
+        // done() also fires on cancellation, so a task cancelled before it starts still frees its slot
+        FutureTask<T> future = new FutureTask<>(task) {
+            @Override
+            protected void done() {
+                inFlight.release();
+            }
+        };
+        try {
+            executor.execute(future);
+            return future;
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs all tasks through the window and returns their results in order.
+     * On the first failure no further tasks are submitted, everything still
+     * pending is cancelled and the original cause is rethrown.
+     */
+    public <T> List<T> runAll(List<? extends Callable<T>> tasks) throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        // Claims the render share of the cores until every task has finished
+        CpuBudget.Lease lease = CpuBudget.render();
+        try {
+            for (Callable<T> task : tasks) {
+                if (failure.get() != null) break;
+                futures.add(submit(() -> {
+                    try {
+                        return task.call();
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        throw t;
+                    }
+                }));
+            }
+
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> f : futures) results.add(f.get());
+            return results;
+        } catch (ExecutionException e) {
+            cancelAll(futures);
+            Throwable cause = failure.get() != null ? failure.get() : e.getCause();
+            if (cause instanceof Exception ex) throw ex;
+            throw new IllegalStateException("Render task failed", cause);
+        } catch (InterruptedException e) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            lease.close();
+        }
+    }
+
+    private static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> f : futures) f.cancel(true);
+    }
+}
@@ -0,0 +1,84 @@
+package com.syntex.islamicstudio.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executor for pipeline stages that mostly wait: transcription, HTTP
+ * calls, downloads, ffmpeg processes, and stages that fan work out to
+ * {@link RenderPool}.
+ *
+ * Stages are wired into a dependency graph with {@link #async} and
+ * {@link #then}; independent branches run concurrently. The pool grows on
+ * demand, so a stage blocking on another stage (or on the render pool) can
+ * never starve the graph. CPU-heavy work still belongs on {@link RenderPool}.
+ */
+public final class StageExecutor {
+
+    /** A stage body that may throw checked exceptions. */
+    @FunctionalInterface
+    public interface Stage<T, R> {
+        R apply(T input) throws Exception;
+    }
+
+    private static final ExecutorService EXECUTOR;
+
+    static {
+        AtomicInteger counter = new AtomicInteger();
+        EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r, "stage-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    private StageExecutor() {
+    }
+
+    public static ExecutorService shared() {
+        return EXECUTOR;
+    }
+
+    /** Starts a stage with no upstream dependencies. */
+    public static <T> CompletableFuture<T> async(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, EXECUTOR);
+    }
+
+    /** Runs {@code stage} on the upstream result once it is available. */
+    public static <T, R> CompletableFuture<R> then(CompletableFuture<T> upstream, Stage<? super T, R> stage) {
+        return upstream.thenApplyAsync(input -> {
+            try {
+                return stage.apply(input);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, EXECUTOR);
+    }
+
+    /** Waits for a stage and rethrows the exception that failed it, unwrapped. */
+    public static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+            if (cause instanceof Exception ex) throw ex;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.syntex.islamicstudio.util;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the largest font size at which wrapped text fits a box.
+ *
+ * Wrapped height grows with the font size, so the size is binary-searched
+ * (about 5 wraps for a 32..8 range instead of one per point). Before a size is
+ * actually wrapped, a lower bound from cached per-character advances is
+ * checked: the text cannot take fewer lines than its total advance divided by
+ * the wrap width, and no line can be narrower than its longest word, so sizes
+ * that clearly overflow are rejected without running a LineBreakMeasurer.
+ * Wrapping goes through {@link TextLayoutCache}, and the returned {@link Fit}
+ * carries the lines so they can be drawn without measuring again.
+ */
+public final class TextFitEngine {
+
+    /** Characters with cached advances; beyond this (and for RTL text) only real wraps are used. */
+    private static final int ADVANCE_RANGE = 0x0250;
+
+    /** Kerning and ligatures make real lines a little narrower than the sum of character advances. */
+    private static final float ADVANCE_SLACK = 0.95f;
+
+    private static final Map<AdvanceKey, float[]> ADVANCES = new ConcurrentHashMap<>();
+
+    private TextFitEngine() {
+    }
+
+    /** A fitted size with its wrapped lines; {@code fits} is false when even the minimum size overflows. */
+    public record Fit(Font font, List<TextLayout> lines, int height, boolean fits) {
+    }
+
+    /**
+     * Largest size from {@code base.getSize()} down to {@code minSize} whose wrapped
+     * height is at most {@code maxHeight}.
+     */
+    public static Fit fitHeight(String text, Font base, int minSize, int maxWidth, int maxHeight,
+                                boolean rtl, FontRenderContext frc) {
+        int lo = Math.max(1, Math.min(minSize, base.getSize()));
+        int hi = base.getSize();
+        if (text == null || text.isBlank()) return fit(text, base, maxWidth, rtl, frc, true);
+
+        Fit best = null;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Font font = FontRegistry.derive(base, (float) mid);
+            if (!rtl && minLines(text, font, maxWidth, frc) * lineHeight(font, frc) > maxHeight) {
+                hi = mid - 1;
+                continue;
+            }
+            List<TextLayout> lines = TextLayoutCache.layout(text, font, maxWidth, rtl, frc);
+            int height = TextLayoutCache.height(lines);
+            if (height <= maxHeight) {
+                best = new Fit(font, lines, height, true);
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (best != null) return best;
+        Fit min = fit(text, FontRegistry.derive(base, (float) Math.max(1, Math.min(minSize, base.getSize()))), maxWidth, rtl, frc, false);
+        return new Fit(min.font(), min.lines(), min.height(), min.height() <= maxHeight);
+    }
+
+    /**
+     * Largest size from {@code base.getSize()} down to {@code minSize} at which no
+     * wrapped line is wider than {@code maxWidth}, i.e. no single word overflows.
+     */
+    public static Fit fitWidth(String text, Font base, int minSize, int maxWidth, FontRenderContext frc) {
+        int lo = Math.max(1, Math.min(minSize, base.getSize()));
+        int hi = base.getSize();
+        if (text == null || text.isBlank()) return fit(text, base, maxWidth, false, frc, true);
+
+        Fit best = null;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            Font font = FontRegistry.derive(base, (float) mid);
+            if (longestWord(text, font, frc) * ADVANCE_SLACK > maxWidth + 0.5f) {
+                hi = mid - 1;
+                continue;
+            }
+            List<TextLayout> lines = TextLayoutCache.layout(text, font, maxWidth, false, frc);
+            if (!exceedsWidth(lines, maxWidth)) {
+                best = new Fit(font, lines, TextLayoutCache.height(lines), true);
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (best != null) return best;
+        return fit(text, FontRegistry.derive(base, (float) Math.max(1, Math.min(minSize, base.getSize()))), maxWidth, false, frc, false);
+    }
+
+    public static void clear() {
+        ADVANCES.clear();
+    }
+
+    private static Fit fit(String text, Font font, int maxWidth, boolean rtl, FontRenderContext frc, boolean fits) {
+        List<TextLayout> lines = TextLayoutCache.layout(text, font, maxWidth, rtl, frc);
+        return new Fit(font, lines, TextLayoutCache.height(lines), fits);
+    }
+
+    private static boolean exceedsWidth(List<TextLayout> lines, int maxWidth) {
+        for (TextLayout layout : lines) {
+            if (layout.getAdvance() > maxWidth + 0.5f) return true;
+        }
+        return false;
+    }
+
+    /** Lower bound on the number of wrapped lines, or 0 if the text has uncached characters. */
+    private static int minLines(String text, Font font, int maxWidth, FontRenderContext frc) {
+        float[] advances = advances(font, frc);
+        float total = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) continue; // may hang past the wrap width at line ends
+            float a = advance(advances, font, frc, c);
+            if (a < 0) return 0;
+            total += a;
+        }
+        return (int) Math.floor(total * ADVANCE_SLACK / maxWidth);
+    }
+
+    /** Advance of the widest space-separated word, or 0 if the text has uncached characters. */
+    private static float longestWord(String text, Font font, FontRenderContext frc) {
+        float[] advances = advances(font, frc);
+        float longest = 0;
+        float word = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                word = 0;
+                continue;
+            }
+            float a = advance(advances, font, frc, c);
+            if (a < 0) return 0;
+            word += a;
+            longest = Math.max(longest, word);
+        }
+        return longest;
+    }
+
+    private static int lineHeight(Font font, FontRenderContext frc) {
+        var lm = font.getLineMetrics("Ag", frc);
+        return (int) (lm.getAscent() + lm.getDescent() + lm.getLeading());
+    }
+
+    private static float[] advances(Font font, FontRenderContext frc) {
+        return ADVANCES.computeIfAbsent(new AdvanceKey(font, frc), k -> {
+            float[] a = new float[ADVANCE_RANGE];
+            Arrays.fill(a, Float.NaN);
+            return a;
+        });
+    }
+
+    /** Filled lazily; racing threads compute the same value. Returns -1 outside the cached range. */
+    private static float advance(float[] advances, Font font, FontRenderContext frc, char c) {
+        if (c >= ADVANCE_RANGE) return -1;
+        float a = advances[c];
+        if (Float.isNaN(a)) {
+            a = font.createGlyphVector(frc, new char[] {c}).getGlyphMetrics(0).getAdvance();
+            advances[c] = a;
+        }
+        return a;
+    }
+
+    private record AdvanceKey(Font font, FontRenderContext frc) {
+    }
+}
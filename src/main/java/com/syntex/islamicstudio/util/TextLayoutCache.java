@@ -0,0 +1,139 @@
+package com.syntex.islamicstudio.util;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared cache of line-broken {@link TextLayout}s used by all Java2D renderers.
+ *
+ * Shaping (Arabic in particular) is the expensive part of drawing wrapped text,
+ * so the result of running a {@link LineBreakMeasurer} is cached per
+ * (text, font, wrap width, direction, render context). A cached list can be
+ * drawn any number of times, e.g. once for the shadow and once for the fill.
+ */
+public final class TextLayoutCache {
+
+    private static final int MAX_ENTRIES = 4096;
+
+    private static final Map<Key, List<TextLayout>> CACHE = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, List<TextLayout>> eldest) {
+            if (size() > MAX_ENTRIES) {
+                EVICTIONS.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong EVICTIONS = new AtomicLong();
+
+    private TextLayoutCache() {
+    }
+
+    /**
+     * Returns the wrapped lines for {@code text}, shaping them only on a cache miss.
+     * Blank text yields an empty list.
+     */
+    public static List<TextLayout> layout(String text, Font font, float wrapWidth, boolean rtl, FontRenderContext frc) {
+        if (text == null || text.isEmpty()) return Collections.emptyList();
+
+        Key key = new Key(text, font, wrapWidth, rtl, frc);
+        List<TextLayout> lines;
+        synchronized (CACHE) {
+            lines = CACHE.get(key);
+        }
+        if (lines != null) {
+            HITS.incrementAndGet();
+            return lines;
+        }
+
+        MISSES.incrementAndGet();
+        lines = Collections.unmodifiableList(breakLines(text, font, wrapWidth, rtl, frc));
+        synchronized (CACHE) {
+            CACHE.putIfAbsent(key, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Shapes the wrapped lines for {@code text} without caching them, for callers that never
+     * draw the same text again (e.g. a one-off export of every verse), so they do not evict
+     * the layouts other renderers reuse. Blank text yields an empty list.
+     */
+    public static List<TextLayout> layoutOnce(String text, Font font, float wrapWidth, boolean rtl, FontRenderContext frc) {
+        if (text == null || text.isEmpty()) return Collections.emptyList();
+        return breakLines(text, font, wrapWidth, rtl, frc);
+    }
+
+    /** Total height (ascent + descent + leading) of the given lines. */
+    public static int height(List<TextLayout> lines) {
+        int h = 0;
+        for (TextLayout layout : lines) {
+            h += layout.getAscent() + layout.getDescent() + layout.getLeading();
+        }
+        return h;
+    }
+
+    public static Stats stats() {
+        int size;
+        synchronized (CACHE) {
+            size = CACHE.size();
+        }
+        return new Stats(HITS.get(), MISSES.get(), EVICTIONS.get(), size);
+    }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+        HITS.set(0);
+        MISSES.set(0);
+        EVICTIONS.set(0);
+    }
+
+    private static List<TextLayout> breakLines(String text, Font font, float wrapWidth, boolean rtl, FontRenderContext frc) {
+        AttributedString attrStr = new AttributedString(text);
+        attrStr.addAttribute(TextAttribute.FONT, font);
+        if (rtl) attrStr.addAttribute(TextAttribute.RUN_DIRECTION, TextAttribute.RUN_DIRECTION_RTL);
+        AttributedCharacterIterator it = attrStr.getIterator();
+        LineBreakMeasurer lbm = new LineBreakMeasurer(it, frc);
+
+        List<TextLayout> lines = new ArrayList<>();
+        while (lbm.getPosition() < it.getEndIndex()) {
+            lines.add(lbm.nextLayout(wrapWidth));
+        }
+        return lines;
+    }
+
+    private record Key(String text, Font font, float wrapWidth, boolean rtl, FontRenderContext frc) {
+    }
+
+    /** Snapshot of cache counters. */
+    public record Stats(long hits, long misses, long evictions, int size) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("text layouts: %d cached, %d hits, %d misses (%.1f%% hit rate), %d evicted",
+                    size, hits, misses, hitRate() * 100, evictions);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.syntex.islamicstudio.util.image;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.syntex.islamicstudio.util.FileHashes;
+
+/**
+ * Background photos decoded and cover-fitted to a box, cached in memory.
+ *
+ * Stock photos are often 4-6x larger than the box they end up in. Instead of
+ * decoding them at full size and scaling with {@code SCALE_SMOOTH} (area
+ * averaging, very slow), the decoder subsamples to about twice the target
+ * size, the rest is halved with bilinear steps and finished with one bicubic
+ * pass, and the result is cropped to the box and its rounded corners. Entries
+ * are keyed by (content hash, box size, radius), so reusing a background for
+ * another card costs a map lookup.
+ */
+public final class BackgroundImageService {
+
+    private static final int MAX_ENTRIES = 32;
+
+    private static final Map<Key, BufferedImage> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private static final Map<Key, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private BackgroundImageService() {
+    }
+
+    /**
+     * Returns {@code source} scaled to cover a {@code width x height} box, centred,
+     * cropped and clipped to corners of {@code radius} (transparent outside). The
+     * image is shared between callers and must not be drawn on.
+     */
+    public static BufferedImage cover(File source, int width, int height, int radius) throws IOException {
+        Key key = new Key(FileHashes.shortHash(source), width, height, radius);
+        BufferedImage img = cached(key);
+        if (img != null) return img;
+
+        // Cards rendered in parallel from the same photo wait for one decode
+        synchronized (LOCKS.computeIfAbsent(key, k -> new Object())) {
+            img = cached(key);
+            if (img == null) {
+                img = fit(decode(source, width, height), width, height, radius);
+                synchronized (CACHE) {
+                    CACHE.put(key, img);
+                }
+            }
+        }
+        LOCKS.remove(key);
+        return img;
+    }
+
+    /**
+     * {@link #cover} for several box sizes at once; the photo is decoded at most once,
+     * at the resolution the largest box needs. Results are in the order of {@code boxes}.
+     */
+    public static List<BufferedImage> coverAll(File source, List<Dimension> boxes, int radius) throws IOException {
+        String hash = FileHashes.shortHash(source);
+        List<BufferedImage> out = new ArrayList<>(boxes.size());
+        BufferedImage decoded = null;
+        for (Dimension box : boxes) {
+            Key key = new Key(hash, box.width, box.height, radius);
+            BufferedImage img = cached(key);
+            if (img == null) {
+                synchronized (LOCKS.computeIfAbsent(key, k -> new Object())) {
+                    img = cached(key);
+                    if (img == null) {
+                        if (decoded == null) decoded = decode(source, largest(boxes).width, largest(boxes).height);
+                        img = fit(decoded, box.width, box.height, radius);
+                        synchronized (CACHE) {
+                            CACHE.put(key, img);
+                        }
+                    }
+                }
+                LOCKS.remove(key);
+            }
+            out.add(img);
+        }
+        return out;
+    }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /** The box needing the most source pixels along both axes, for the subsampling step. */
+    private static Dimension largest(List<Dimension> boxes) {
+        int w = 0, h = 0;
+        for (Dimension box : boxes) {
+            w = Math.max(w, box.width);
+            h = Math.max(h, box.height);
+        }
+        return new Dimension(w, h);
+    }
+
+    private static BufferedImage cached(Key key) {
+        synchronized (CACHE) {
+            return CACHE.get(key);
+        }
+    }
+
+    /**
+     * Decodes with source subsampling, keeping at least twice the cover size on the
+     * shorter axis so the progressive downscale still has real pixels to average.
+     */
+    private static BufferedImage decode(File source, int width, int height) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            if (in == null) throw new IOException("Cannot open background image: " + source);
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException("Unsupported background image format: " + source);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int srcW = reader.getWidth(0);
+                int srcH = reader.getHeight(0);
+                double ratio = Math.min((double) srcW / width, (double) srcH / height);
+                int step = Math.max(1, (int) Math.floor(ratio / 2));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage img = reader.read(0, param);
+                if (img == null) throw new IOException("Could not load background image: " + source);
+                return img;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage fit(BufferedImage src, int width, int height, int radius) {
+        double scale = Math.max((double) width / src.getWidth(), (double) height / src.getHeight());
+        int drawW = (int) Math.ceil(src.getWidth() * scale);
+        int drawH = (int) Math.ceil(src.getHeight() * scale);
+
+        // Halve while still at least twice the target, then one bicubic step to size
+        BufferedImage img = src;
+        while (img.getWidth() / 2 >= drawW && img.getHeight() / 2 >= drawH) {
+            img = resize(img, img.getWidth() / 2, img.getHeight() / 2, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = out.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setClip(new RoundRectangle2D.Float(0, 0, width, height, radius, radius));
+        g.drawImage(img, (width - drawW) / 2, (height - drawH) / 2, drawW, drawH, null);
+        g.dispose();
+        return out;
+    }
+
+    private static BufferedImage resize(BufferedImage src, int width, int height, Object interpolation) {
+        BufferedImage out = new BufferedImage(width, height,
+                src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        g.drawImage(src, 0, 0, width, height, null);
+        g.dispose();
+        return out;
+    }
+
+    private record Key(String hash, int width, int height, int radius) {
+    }
+}
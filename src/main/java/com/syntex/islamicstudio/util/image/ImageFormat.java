@@ -0,0 +1,54 @@
+package com.syntex.islamicstudio.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Image encoder presets.
+ *
+ * - PNG_DEFAULT: the JDK writer (adaptive filtering + default deflate), kept for reference.
+ * - PNG_STORED: no filtering, no compression. Largest files, cheapest to write.
+ * - PNG_FAST: no filtering, deflate level 1. Intermediates handed to ffmpeg.
+ * - QOI: "Quite OK Image" format, linear-time and uncompressed-ish; internal hand-off.
+ * - PNG_PARALLEL: Up filter + deflate level 6 split across cores. Final exports.
+ */
+public enum ImageFormat {
+    PNG_DEFAULT(new ImageSink() {
+        @Override
+        public String extension() {
+            return "png";
+        }
+
+        @Override
+        public void write(BufferedImage img, OutputStream out) throws IOException {
+            if (!ImageIO.write(img, "png", out)) throw new IOException("No PNG writer available");
+        }
+    }),
+    PNG_STORED(new PngImageSink(0, PngImageSink.Filter.NONE, 1)),
+    PNG_FAST(new PngImageSink(1, PngImageSink.Filter.NONE, 1)),
+    QOI(new QoiImageSink()),
+    PNG_PARALLEL(new PngImageSink(6, PngImageSink.Filter.UP, Runtime.getRuntime().availableProcessors()));
+
+    private final ImageSink sink;
+
+    ImageFormat(ImageSink sink) {
+        this.sink = sink;
+    }
+
+    public ImageSink sink() {
+        return sink;
+    }
+
+    /** Sink for intermediate render artifacts that are read back by ffmpeg. */
+    public static ImageSink intermediate() {
+        return PNG_FAST.sink;
+    }
+
+    /** Sink for final, user-facing exports. */
+    public static ImageSink export() {
+        return PNG_PARALLEL.sink;
+    }
+}
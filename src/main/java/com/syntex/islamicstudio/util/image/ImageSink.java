@@ -0,0 +1,34 @@
+package com.syntex.islamicstudio.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Destination encoder for rendered images. Implementations trade file size
+ * for encode speed; see {@link ImageFormat} for the available presets.
+ */
+public interface ImageSink {
+
+    /** File extension (without dot) produced by this sink. */
+    String extension();
+
+    void write(BufferedImage img, OutputStream out) throws IOException;
+
+    /** Writes {@code img} to {@code dir/baseName.<extension>} and returns the file. */
+    default File write(BufferedImage img, File dir, String baseName) throws IOException {
+        File out = new File(dir, baseName + "." + extension());
+        write(img, out);
+        return out;
+    }
+
+    default void write(BufferedImage img, File out) throws IOException {
+        if (out.getParentFile() != null) out.getParentFile().mkdirs();
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(out), 1 << 16)) {
+            write(img, os);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.syntex.islamicstudio.util.image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Row access shared by the custom encoders.
+ */
+final class Pixels {
+
+    private Pixels() {
+    }
+
+    /** Whether the encoded output needs an alpha channel. */
+    static boolean hasAlpha(BufferedImage img) {
+        return img.getColorModel().hasAlpha();
+    }
+
+    /**
+     * Reads row {@code y} as non-premultiplied ARGB into {@code row}.
+     * INT_ARGB/INT_RGB rasters (including subimages) are copied directly;
+     * everything else goes through the colour model.
+     */
+    static void readRow(BufferedImage img, int y, int[] row) {
+        int w = img.getWidth();
+        int type = img.getType();
+        if (type == BufferedImage.TYPE_INT_ARGB) {
+            img.getRaster().getDataElements(0, y, w, 1, row);
+        } else if (type == BufferedImage.TYPE_INT_RGB) {
+            img.getRaster().getDataElements(0, y, w, 1, row);
+            for (int x = 0; x < w; x++) row[x] |= 0xFF000000;
+        } else {
+            img.getRGB(0, y, w, 1, row, 0, w);
+        }
+    }
+}
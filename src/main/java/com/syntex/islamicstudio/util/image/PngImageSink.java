@@ -0,0 +1,213 @@
+package com.syntex.islamicstudio.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.stream.IntStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Minimal 8-bit RGB/RGBA PNG encoder with a tunable deflate level and a fixed
+ * scanline filter (the JDK writer always runs adaptive filtering at default level).
+ *
+ * With parallelism > 1 the image is split into horizontal strips that are
+ * filtered and deflated concurrently, pigz-style: every strip but the last ends
+ * with a sync flush, so the raw deflate blocks concatenate into one valid zlib
+ * stream. The per-strip Adler-32 checksums are combined for the trailer.
+ */
+public final class PngImageSink implements ImageSink {
+
+    public enum Filter {
+        NONE(0), SUB(1), UP(2);
+
+        final int code;
+
+        Filter(int code) {
+            this.code = code;
+        }
+    }
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int MIN_ROWS_PER_STRIP = 32;
+    private static final int ADLER_BASE = 65521;
+
+    private final int level;
+    private final Filter filter;
+    private final int parallelism;
+
+    public PngImageSink(int level, Filter filter, int parallelism) {
+        this.level = level;
+        this.filter = filter;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Override
+    public String extension() {
+        return "png";
+    }
+
+    @Override
+    public void write(BufferedImage img, OutputStream out) throws IOException {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        boolean alpha = Pixels.hasAlpha(img);
+
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.write(SIGNATURE);
+
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream(13);
+        DataOutputStream ihdrOut = new DataOutputStream(ihdr);
+        ihdrOut.writeInt(w);
+        ihdrOut.writeInt(h);
+        ihdrOut.writeByte(8);               // bit depth
+        ihdrOut.writeByte(alpha ? 6 : 2);   // RGBA : RGB
+        ihdrOut.writeByte(0);               // deflate
+        ihdrOut.writeByte(0);               // adaptive filter method
+        ihdrOut.writeByte(0);               // no interlace
+        writeChunk(dos, "IHDR", ihdr.toByteArray());
+
+        int strips = parallelism == 1 ? 1 : Math.max(1, Math.min(parallelism * 2, h / MIN_ROWS_PER_STRIP));
+        int rowsPerStrip = (h + strips - 1) / strips;
+        int stripCount = (h + rowsPerStrip - 1) / rowsPerStrip;
+
+        Strip[] compressed = new Strip[stripCount];
+        IntStream range = IntStream.range(0, stripCount);
+        if (stripCount > 1) range = range.parallel();
+        range.forEach(i -> {
+            int y0 = i * rowsPerStrip;
+            int y1 = Math.min(h, y0 + rowsPerStrip);
+            compressed[i] = compressStrip(img, alpha, y0, y1, i == stripCount - 1);
+        });
+
+        long adler = 1;
+        for (int i = 0; i < stripCount; i++) {
+            byte[] data = compressed[i].data;
+            if (i == 0) {
+                byte[] first = new byte[data.length + 2];
+                first[0] = 0x78;
+                first[1] = zlibFlags(level);
+                System.arraycopy(data, 0, first, 2, data.length);
+                data = first;
+            }
+            writeChunk(dos, "IDAT", data);
+            adler = i == 0 ? compressed[i].adler : combineAdler(adler, compressed[i].adler, compressed[i].rawLength);
+        }
+        writeChunk(dos, "IDAT", new byte[]{
+                (byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler});
+        writeChunk(dos, "IEND", new byte[0]);
+        dos.flush();
+    }
+
+    private Strip compressStrip(BufferedImage img, boolean alpha, int y0, int y1, boolean last) {
+        int w = img.getWidth();
+        int bpp = alpha ? 4 : 3;
+        int stride = w * bpp;
+        byte[] raw = new byte[(y1 - y0) * (stride + 1)];
+
+        int[] argb = new int[w];
+        byte[] cur = new byte[stride];
+        byte[] prev = new byte[stride];
+        if (filter == Filter.UP && y0 > 0) {
+            Pixels.readRow(img, y0 - 1, argb);
+            unpack(argb, prev, alpha);
+        }
+
+        int pos = 0;
+        for (int y = y0; y < y1; y++) {
+            Pixels.readRow(img, y, argb);
+            unpack(argb, cur, alpha);
+            raw[pos++] = (byte) filter.code;
+            switch (filter) {
+                case NONE -> System.arraycopy(cur, 0, raw, pos, stride);
+                case SUB -> {
+                    for (int i = 0; i < stride; i++) {
+                        raw[pos + i] = (byte) (cur[i] - (i >= bpp ? cur[i - bpp] : 0));
+                    }
+                }
+                case UP -> {
+                    for (int i = 0; i < stride; i++) raw[pos + i] = (byte) (cur[i] - prev[i]);
+                }
+            }
+            pos += stride;
+            byte[] t = prev;
+            prev = cur;
+            cur = t;
+        }
+
+        Deflater deflater = new Deflater(level, true);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buf = new byte[1 << 16];
+        try {
+            deflater.setInput(raw);
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buf);
+                    bos.write(buf, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    bos.write(buf, 0, n);
+                } while (n == buf.length);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        Adler32 adler = new Adler32();
+        adler.update(raw);
+        return new Strip(bos.toByteArray(), adler.getValue(), raw.length);
+    }
+
+    private static void unpack(int[] argb, byte[] out, boolean alpha) {
+        int p = 0;
+        for (int px : argb) {
+            out[p++] = (byte) (px >>> 16);
+            out[p++] = (byte) (px >>> 8);
+            out[p++] = (byte) px;
+            if (alpha) out[p++] = (byte) (px >>> 24);
+        }
+    }
+
+    private static byte zlibFlags(int level) {
+        // FLEVEL is informational; each value keeps (CMF * 256 + FLG) % 31 == 0
+        if (level <= 1) return 0x01;
+        if (level <= 5) return 0x5E;
+        if (level == 6) return (byte) 0x9C;
+        return (byte) 0xDA;
+    }
+
+    /** zlib's adler32_combine: checksum of A||B from adler(A), adler(B) and len(B). */
+    private static long combineAdler(long adler1, long adler2, long len2) {
+        long rem = len2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= ((long) ADLER_BASE << 1)) sum2 -= ((long) ADLER_BASE << 1);
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private record Strip(byte[] data, long adler, int rawLength) {
+    }
+}
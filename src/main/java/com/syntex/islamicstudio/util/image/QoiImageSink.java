@@ -0,0 +1,174 @@
+package com.syntex.islamicstudio.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Encoder/decoder for the QOI ("Quite OK Image") format.
+ *
+ * QOI is a single linear pass with no entropy coding, which makes it an order
+ * of magnitude cheaper than deflate for handing renders between pipeline
+ * stages. ffmpeg (5.1+) reads it natively.
+ */
+public final class QoiImageSink implements ImageSink {
+
+    private static final int OP_INDEX = 0x00;
+    private static final int OP_DIFF = 0x40;
+    private static final int OP_LUMA = 0x80;
+    private static final int OP_RUN = 0xC0;
+    private static final int OP_RGB = 0xFE;
+    private static final int OP_RGBA = 0xFF;
+    private static final int MASK_2 = 0xC0;
+    private static final byte[] END_MARKER = {0, 0, 0, 0, 0, 0, 0, 1};
+
+    @Override
+    public String extension() {
+        return "qoi";
+    }
+
+    @Override
+    public void write(BufferedImage img, OutputStream out) throws IOException {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        boolean alpha = Pixels.hasAlpha(img);
+
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeBytes("qoif");
+        dos.writeInt(w);
+        dos.writeInt(h);
+        dos.writeByte(alpha ? 4 : 3);
+        dos.writeByte(0); // sRGB with linear alpha
+
+        int[] index = new int[64];
+        int[] row = new int[w];
+        // worst case per pixel is 5 bytes (OP_RGBA)
+        byte[] buf = new byte[w * 5 + 1];
+        int prev = 0xFF000000;
+        int run = 0;
+
+        for (int y = 0; y < h; y++) {
+            Pixels.readRow(img, y, row);
+            int p = 0;
+            for (int x = 0; x < w; x++) {
+                int px = row[x];
+                boolean lastPixel = y == h - 1 && x == w - 1;
+
+                if (px == prev) {
+                    run++;
+                    if (run == 62 || lastPixel) {
+                        buf[p++] = (byte) (OP_RUN | (run - 1));
+                        run = 0;
+                    }
+                    continue;
+                }
+
+                if (run > 0) {
+                    buf[p++] = (byte) (OP_RUN | (run - 1));
+                    run = 0;
+                }
+
+                int r = (px >>> 16) & 0xFF, g = (px >>> 8) & 0xFF, b = px & 0xFF, a = px >>> 24;
+                int hash = (r * 3 + g * 5 + b * 7 + a * 11) % 64;
+
+                if (index[hash] == px) {
+                    buf[p++] = (byte) (OP_INDEX | hash);
+                } else {
+                    index[hash] = px;
+                    if (a == (prev >>> 24)) {
+                        int vr = (byte) (r - ((prev >>> 16) & 0xFF));
+                        int vg = (byte) (g - ((prev >>> 8) & 0xFF));
+                        int vb = (byte) (b - (prev & 0xFF));
+                        int vgr = vr - vg;
+                        int vgb = vb - vg;
+
+                        if (vr > -3 && vr < 2 && vg > -3 && vg < 2 && vb > -3 && vb < 2) {
+                            buf[p++] = (byte) (OP_DIFF | (vr + 2) << 4 | (vg + 2) << 2 | (vb + 2));
+                        } else if (vgr > -9 && vgr < 8 && vg > -33 && vg < 32 && vgb > -9 && vgb < 8) {
+                            buf[p++] = (byte) (OP_LUMA | (vg + 32));
+                            buf[p++] = (byte) ((vgr + 8) << 4 | (vgb + 8));
+                        } else {
+                            buf[p++] = (byte) OP_RGB;
+                            buf[p++] = (byte) r;
+                            buf[p++] = (byte) g;
+                            buf[p++] = (byte) b;
+                        }
+                    } else {
+                        buf[p++] = (byte) OP_RGBA;
+                        buf[p++] = (byte) r;
+                        buf[p++] = (byte) g;
+                        buf[p++] = (byte) b;
+                        buf[p++] = (byte) a;
+                    }
+                }
+                prev = px;
+            }
+            dos.write(buf, 0, p);
+        }
+        dos.write(END_MARKER);
+        dos.flush();
+    }
+
+    /** Decodes a QOI stream into a TYPE_INT_ARGB image. */
+    public static BufferedImage read(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        byte[] magic = new byte[4];
+        dis.readFully(magic);
+        if (magic[0] != 'q' || magic[1] != 'o' || magic[2] != 'i' || magic[3] != 'f') {
+            throw new IOException("Not a QOI stream");
+        }
+        int w = dis.readInt();
+        int h = dis.readInt();
+        dis.readUnsignedByte(); // channels
+        dis.readUnsignedByte(); // colorspace
+
+        int[] pixels = new int[w * h];
+        int[] index = new int[64];
+        int px = 0xFF000000;
+        int run = 0;
+
+        for (int i = 0; i < pixels.length; i++) {
+            if (run > 0) {
+                run--;
+            } else {
+                int b1 = dis.readUnsignedByte();
+                if (b1 == OP_RGB) {
+                    px = (px & 0xFF000000) | dis.readUnsignedByte() << 16 | dis.readUnsignedByte() << 8 | dis.readUnsignedByte();
+                } else if (b1 == OP_RGBA) {
+                    int r = dis.readUnsignedByte(), g = dis.readUnsignedByte(), b = dis.readUnsignedByte(), a = dis.readUnsignedByte();
+                    px = a << 24 | r << 16 | g << 8 | b;
+                } else if ((b1 & MASK_2) == OP_INDEX) {
+                    px = index[b1];
+                } else if ((b1 & MASK_2) == OP_DIFF) {
+                    px = withRgb(px,
+                            ((px >>> 16) & 0xFF) + ((b1 >> 4) & 0x03) - 2,
+                            ((px >>> 8) & 0xFF) + ((b1 >> 2) & 0x03) - 2,
+                            (px & 0xFF) + (b1 & 0x03) - 2);
+                } else if ((b1 & MASK_2) == OP_LUMA) {
+                    int b2 = dis.readUnsignedByte();
+                    int vg = (b1 & 0x3F) - 32;
+                    px = withRgb(px,
+                            ((px >>> 16) & 0xFF) + vg - 8 + ((b2 >> 4) & 0x0F),
+                            ((px >>> 8) & 0xFF) + vg,
+                            (px & 0xFF) + vg - 8 + (b2 & 0x0F));
+                } else {
+                    run = b1 & 0x3F;
+                }
+                int a = px >>> 24, r = (px >>> 16) & 0xFF, g = (px >>> 8) & 0xFF, b = px & 0xFF;
+                index[(r * 3 + g * 5 + b * 7 + a * 11) % 64] = px;
+            }
+            pixels[i] = px;
+        }
+
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(0, 0, w, h, pixels, 0, w);
+        return img;
+    }
+
+    private static int withRgb(int px, int r, int g, int b) {
+        return (px & 0xFF000000) | (r & 0xFF) << 16 | (g & 0xFF) << 8 | (b & 0xFF);
+    }
+}